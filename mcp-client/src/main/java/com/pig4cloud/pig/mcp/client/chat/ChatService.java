@@ -1,11 +1,16 @@
 package com.pig4cloud.pig.mcp.client.chat;
 
 
+import com.pig4cloud.pig.mcp.client.handle.SseChatEvent;
 import com.pig4cloud.pig.mcp.common.params.ChatRequestParams;
 import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.codec.ServerSentEvent;
+import reactor.core.publisher.Flux;
 
 import java.util.List;
 
 public interface ChatService {
     Object chat(ChatRequestParams chatRequestParams, HttpServletResponse response);
+
+    Flux<ServerSentEvent<SseChatEvent>> chatStream(ChatRequestParams chatRequestParams);
 }
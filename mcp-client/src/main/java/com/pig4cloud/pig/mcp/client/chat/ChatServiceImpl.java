@@ -2,30 +2,43 @@ package com.pig4cloud.pig.mcp.client.chat;
 
 import cn.hutool.core.collection.CollectionUtil;
 import com.alibaba.nacos.shaded.com.google.common.collect.Lists;
+import com.pig4cloud.pig.mcp.client.enums.SseBackpressurePolicy;
+import com.pig4cloud.pig.mcp.client.enums.SseEventType;
+import com.pig4cloud.pig.mcp.client.handle.SseChatEvent;
+import com.pig4cloud.pig.mcp.client.handle.SseEventWriter;
 import com.pig4cloud.pig.mcp.client.handle.StreamChatEventHandler;
+import com.pig4cloud.pig.mcp.client.handle.ToolLoopState;
 import com.pig4cloud.pig.mcp.client.registry.RegistryMcpClientService;
 import com.pig4cloud.pig.mcp.common.bean.RestResultCode;
 import com.pig4cloud.pig.mcp.common.exception.RestCustomException;
 import com.pig4cloud.pig.mcp.common.params.ChatRequestParams;
+import com.pig4cloud.pig.mcp.common.properties.McpClientProperties;
 import com.pig4cloud.pig.mcp.common.util.JsonUtil;
 import com.pig4cloud.pig.mcp.common.util.R;
 import jakarta.annotation.Resource;
 import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
 import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.chat.model.ChatResponse;
 import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.ai.model.function.FunctionCallback;
 import org.springframework.ai.model.tool.ToolCallingChatOptions;
-import org.springframework.ai.model.tool.ToolCallingManager;
 import org.springframework.ai.model.tool.ToolExecutionResult;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Service;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
 
 /**
@@ -38,10 +51,13 @@ public class ChatServiceImpl implements ChatService {
     private ChatModel chatModel; // 注入 ChatModel，用于与大模型进行交互
 
     @Autowired
-    private ToolCallingManager toolCallingManager; // 注入 ToolCallingManager，用于处理工具调用
+    private ParallelToolCallExecutor parallelToolCallExecutor; // 注入 ParallelToolCallExecutor，用于并发执行工具调用
 
     @Resource(name = "sseStreamConsumerThreadPool")
-    private ThreadPoolExecutor sseStreamConsumerThreadPool; // 注入线程池，用于异步执行任务
+    private ExecutorService sseStreamConsumerThreadPool; // 注入线程池，用于异步执行任务
+
+    @Resource(name = "sseEventWriterThreadPool")
+    private ExecutorService sseEventWriterThreadPool; // 注入线程池，用于向客户端写出 SSE 事件
 
     @Autowired
     private StreamChatEventHandler streamChatEventHandler; // 注入 StreamChatEventHandler，用于处理流式聊天事件
@@ -49,6 +65,9 @@ public class ChatServiceImpl implements ChatService {
     @Autowired
     private RegistryMcpClientService registryMcpSyncClientService; // 注入 RegistryMcpClientService，用于注册 MCP 同步客户端
 
+    @Autowired
+    private McpClientProperties mcpClientProperties; // 注入 McpClientProperties，用于判断是否开启非阻塞模式
+
     /**
      * 聊天接口
      *
@@ -69,6 +88,34 @@ public class ChatServiceImpl implements ChatService {
         return doChat(chatRequestParams, response, messageList);
     }
 
+    /**
+     * 响应式流式聊天接口
+     * <p>
+     * 直接返回问答事件流，由 Spring MVC 订阅并逐个写出：客户端读取多少才向上游请求多少，
+     * 客户端断开或请求超时时取消订阅，大模型流式输出和进行中的工具调用随之取消，且不占用 SSE 消费线程。
+     *
+     * @param chatRequestParams 聊天请求参数
+     * @return 问答事件流
+     * @throws RestCustomException 对话消息不存在
+     */
+    @Override
+    public Flux<ServerSentEvent<SseChatEvent>> chatStream(ChatRequestParams chatRequestParams) {
+        List<Message> messageList = chatRequestParams.transMessage();
+        if (CollectionUtil.isEmpty(messageList)) {
+            throw new RestCustomException(R.generic(RestResultCode.REST_COMMON_INVALID_PARAMETER.getCode(), "对话消息不存在"));
+        }
+        String agentId = chatRequestParams.getAgentId();
+        Flux<SseChatEvent> events = reactiveChatFlux(messageList, chatRequestParams);
+        if (mcpClientProperties.getSseIdleTimeout() > 0) {
+            // 看门狗：相邻两个事件间隔超过空闲时间时取消上游并以超时错误结束
+            events = events.timeout(Duration.ofMillis(mcpClientProperties.getSseIdleTimeout()));
+        }
+        return events
+                .map(event -> ServerSentEvent.builder(event).event(event.eventType().getName()).build())
+                .doOnCancel(() -> log.info("【大模型流试输出】 智能体id:{} 客户端断开连接,取消问答", agentId))
+                .doOnError(error -> log.error("【大模型问答】 响应式流试请求发生异常 智能体id:{} 用户输入参数:{}", agentId, messageList, error));
+    }
+
     /**
      * 执行聊天操作
      *
@@ -82,6 +129,21 @@ public class ChatServiceImpl implements ChatService {
         return chatRequestParams.getStream() ? streamChat(chatRequestParams, messageList, response) : R.ok(normalChat(chatRequestParams, messageList));
     }
 
+    /**
+     * 获取用户最新的问题，用于挑选相关工具
+     *
+     * @param messageList 问答列表
+     * @return 最后一条用户消息的内容，不存在时返回 null
+     */
+    private String latestUserQuery(List<Message> messageList) {
+        for (int i = messageList.size() - 1; i >= 0; i--) {
+            if (messageList.get(i).getMessageType() == MessageType.USER) {
+                return messageList.get(i).getText();
+            }
+        }
+        return null;
+    }
+
     /**
      * 正常普通询问
      *
@@ -93,7 +155,7 @@ public class ChatServiceImpl implements ChatService {
         List<FunctionCallback> tools = Lists.newArrayList();
         try {
             // 获取 FunctionCallback 列表
-            tools = registryMcpSyncClientService.getFunctionCallbacks(chatRequestParams.getStream(), chatRequestParams.getAgentId(), chatRequestParams.getMcpConfigs());
+            tools = registryMcpSyncClientService.getFunctionCallbacks(chatRequestParams.getStream(), chatRequestParams.getAgentId(), chatRequestParams.getMcpConfigs(), latestUserQuery(messageList));
             ToolCallingChatOptions chatOptions = ToolCallingChatOptions.builder().toolCallbacks(tools).internalToolExecutionEnabled(chatRequestParams.getInternalToolExecutionEnabled()).build();
             // 创建 Prompt 对象
             Prompt prompt = new Prompt(messageList, chatOptions);
@@ -102,7 +164,7 @@ public class ChatServiceImpl implements ChatService {
             // 如果有工具调用，则循环处理
             while (chatResponse.hasToolCalls()) {
                 // 执行工具调用
-                ToolExecutionResult toolExecutionResult = toolCallingManager.executeToolCalls(prompt, chatResponse);
+                ToolExecutionResult toolExecutionResult = parallelToolCallExecutor.executeToolCalls(prompt, chatResponse, ParallelToolCallExecutor.ToolCallListener.NONE);
                 // 更新 Prompt 对象
                 prompt = new Prompt(toolExecutionResult.conversationHistory(), chatOptions);
                 // 再次调用大模型
@@ -133,8 +195,17 @@ public class ChatServiceImpl implements ChatService {
         response.setCharacterEncoding("UTF-8");
         // 创建 SseEmitter 对象，设置超时时间为 0，表示不超时
         SseEmitter emitter = new SseEmitter(0L); // 不超时
+        // 事件先放入连接自己的缓冲区，由发送线程写出，客户端接收慢时不阻塞大模型流式输出
+        // 相邻的助手消息片段合并为一个事件发送，减少 JSON 编码和 flush 次数
+        SseEventWriter writer = new SseEventWriter(emitter, sseEventWriterThreadPool, mcpClientProperties.getSseBufferHighWaterMark(), SseBackpressurePolicy.of(mcpClientProperties.getSseBackpressurePolicy()),
+                mcpClientProperties.getSseCoalesceInterval(), mcpClientProperties.getSseCoalesceMaxChars(), mcpClientProperties.getSseIdleTimeout());
+        if (mcpClientProperties.getAsyncEnabled()) {
+            // 全链路非阻塞，不占用线程池线程
+            reactiveConsumerSseResponse(messageList, chatRequestParams, writer);
+            return emitter;
+        }
         // 异步执行 consumerSseResponse 方法
-        sseStreamConsumerThreadPool.execute(() -> consumerSseResponse(messageList, chatRequestParams, emitter));
+        sseStreamConsumerThreadPool.execute(() -> consumerSseResponse(messageList, chatRequestParams, writer));
         // 返回 SseEmitter 对象
         return emitter;
     }
@@ -144,46 +215,110 @@ public class ChatServiceImpl implements ChatService {
      *
      * @param messageList       消息列表
      * @param chatRequestParams 聊天参数
-     * @param emitter           SseEmitter 对象
+     * @param writer            SseEventWriter 对象
      */
-    private void consumerSseResponse(List<Message> messageList, ChatRequestParams chatRequestParams, SseEmitter emitter) {
+    private void consumerSseResponse(List<Message> messageList, ChatRequestParams chatRequestParams, SseEventWriter writer) {
         List<FunctionCallback> tools = Lists.newArrayList();
         try {
             // 获取 FunctionCallback 列表
-            tools = registryMcpSyncClientService.getFunctionCallbacks(chatRequestParams.getStream(), chatRequestParams.getAgentId(), chatRequestParams.getMcpConfigs());
+            tools = registryMcpSyncClientService.getFunctionCallbacks(chatRequestParams.getStream(), chatRequestParams.getAgentId(), chatRequestParams.getMcpConfigs(), latestUserQuery(messageList));
             // 执行 doConsumerSseResponse 方法
-            doConsumerSseResponse(messageList, chatRequestParams, tools, emitter);
+            doConsumerSseResponse(messageList, chatRequestParams, tools, writer);
         } catch (Exception e) {
             // 记录错误日志
             log.error("【大模型问答】 流试请求发生异常 用户输入参数:{} 工具:{} ", messageList, JsonUtil.encodeToString(tools), e);
             // 发送错误信息
-            emitter.completeWithError(e);
+            writer.error(e);
         }
     }
 
+    /**
+     * 以非阻塞方式消费 Sse 响应
+     * <p>
+     * 客户端注册、工具发现、工具调用和大模型流式输出组合为一条事件流，
+     * 事件流正常结束时关闭 SseEmitter，发生异常时以错误结束 SseEmitter。
+     *
+     * @param messageList       消息列表
+     * @param chatRequestParams 聊天参数
+     * @param writer            SseEventWriter 对象
+     */
+    private void reactiveConsumerSseResponse(List<Message> messageList, ChatRequestParams chatRequestParams, SseEventWriter writer) {
+        String agentId = chatRequestParams.getAgentId();
+        writer.bindUpstream(reactiveChatFlux(messageList, chatRequestParams)
+                .subscribe(
+                        writer::send,
+                        error -> {
+                            log.error("【大模型问答】 非阻塞流试请求发生异常 智能体id:{} 用户输入参数:{}", agentId, messageList, error);
+                            writer.error(error);
+                        },
+                        () -> {
+                            log.debug("【大模型流试输出】 智能体id:{} 问答结束,SseEmitter关闭", agentId);
+                            writer.complete();
+                        }));
+    }
+
+    /**
+     * 构建非阻塞问答事件流：客户端注册、工具发现、工具调用和大模型流式输出组合为一条事件流
+     *
+     * @param messageList       消息列表
+     * @param chatRequestParams 聊天参数
+     * @return 问答事件流
+     */
+    private Flux<SseChatEvent> reactiveChatFlux(List<Message> messageList, ChatRequestParams chatRequestParams) {
+        String agentId = chatRequestParams.getAgentId();
+        ToolLoopState loopState = newToolLoopState();
+        Flux<SseChatEvent> events = registryMcpSyncClientService.getAsyncToolCallbacks(agentId, chatRequestParams.getMcpConfigs(), latestUserQuery(messageList))
+                .flatMapMany(tools -> {
+                    Map<String, CustomAsyncMcpToolCallback> toolCallbackMap = tools.stream()
+                            .collect(Collectors.toMap(tool -> tool.getToolDefinition().name(), tool -> tool, (first, second) -> first));
+                    // 工具由事件流自行非阻塞执行，关闭框架内部的工具执行
+                    ToolCallingChatOptions chatOptions = ToolCallingChatOptions.builder().toolCallbacks(new ArrayList<>(tools)).internalToolExecutionEnabled(false).build();
+                    return streamChatEventHandler.createReactiveChatFlux(agentId, new Prompt(messageList, chatOptions), chatOptions, toolCallbackMap, loopState);
+                });
+        if (loopState.budgetMillis() > 0) {
+            // 总耗时到期时取消大模型流式输出和进行中的工具调用，补发终止事件，不等到下一轮
+            AtomicBoolean expired = new AtomicBoolean(false);
+            events = events.takeUntilOther(Mono.delay(Duration.ofMillis(loopState.budgetMillis())).doOnNext(tick -> expired.set(true)))
+                    .concatWith(Mono.fromSupplier(() -> expired.get() ? loopState.checkBudget() : null));
+        }
+        // 工具调用达到上限的终止事件之后取消大模型流式输出，只会发送一次终止事件
+        return events.takeUntil(event -> event.eventType() == SseEventType.TOOL_LOOP_LIMIT)
+                // 无论以何种原因结束，最后一个事件都是包含 token 用量和耗时的结束事件
+                .concatWith(Mono.fromSupplier(loopState::doneEvent));
+    }
+
     /**
      * 执行消费 Sse 响应
      *
      * @param messageList       消息列表
      * @param chatRequestParams 聊天参数
      * @param tools             FunctionCallback 列表
-     * @param emitter           SseEmitter 对象
+     * @param writer            SseEventWriter 对象
      */
-    private void doConsumerSseResponse(List<Message> messageList, ChatRequestParams chatRequestParams, List<FunctionCallback> tools, SseEmitter emitter) {
+    private void doConsumerSseResponse(List<Message> messageList, ChatRequestParams chatRequestParams, List<FunctionCallback> tools, SseEventWriter writer) {
         String agentId = chatRequestParams.getAgentId();
-        // 创建 AtomicBoolean 对象，用于标记是否已完成
-        AtomicBoolean completed = new AtomicBoolean(false);
         // 构建 ToolCallingChatOptions 对象
         ToolCallingChatOptions chatOptions = ToolCallingChatOptions.builder().toolCallbacks(tools).internalToolExecutionEnabled(chatRequestParams.getInternalToolExecutionEnabled()).build();
         // 创建 Prompt 数组
         Prompt[] prompt = {new Prompt(messageList, chatOptions)};
         // 用于存储最后一个 chatResponse
         final ChatResponse[] lastChatResponse = {null};
-        // 调用大模型
-        chatModel.stream(prompt[0])
+        // 本次问答的工具调用循环状态，各轮共享
+        ToolLoopState loopState = newToolLoopState();
+        // 总耗时到期时直接终止问答，不等到下一轮
+        streamChatEventHandler.armTimeBudget(writer, agentId, loopState);
+        // 调用大模型，绑定订阅以便客户端接收过慢时取消
+        writer.bindUpstream(chatModel.stream(prompt[0])
                 .subscribe(
-                        streamChatEventHandler.createChatResponseConsumer(emitter, agentId, completed, prompt, chatOptions, lastChatResponse), // 注册 ChatResponse 处理器
-                        streamChatEventHandler.createChaterrorConsumer(emitter, completed), // 注册 ChatError 处理器
-                        streamChatEventHandler.createCompleteConsumerByFinishReasonStop(emitter, agentId, completed, lastChatResponse)); // 注册 Complete 处理器
+                        streamChatEventHandler.createChatResponseConsumer(writer, agentId, prompt, chatOptions, lastChatResponse, loopState), // 注册 ChatResponse 处理器
+                        streamChatEventHandler.createChaterrorConsumer(writer), // 注册 ChatError 处理器
+                        streamChatEventHandler.createCompleteConsumer(writer, agentId, lastChatResponse, loopState))); // 注册 Complete 处理器
+    }
+
+    /**
+     * 创建本次问答的工具调用循环状态
+     */
+    private ToolLoopState newToolLoopState() {
+        return new ToolLoopState(mcpClientProperties.getToolMaxRounds(), mcpClientProperties.getChatTimeBudget());
     }
 }
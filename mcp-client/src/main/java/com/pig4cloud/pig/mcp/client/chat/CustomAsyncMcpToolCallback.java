@@ -1,13 +1,14 @@
 package com.pig4cloud.pig.mcp.client.chat;
 
-import cn.hutool.json.JSONUtil;
+import com.pig4cloud.pig.mcp.client.utils.McpToolDefinitionUtils;
 import com.pig4cloud.pig.mcp.common.util.JsonUtil;
 import io.modelcontextprotocol.client.McpAsyncClient;
 import io.modelcontextprotocol.spec.McpSchema;
 import org.springframework.ai.mcp.AsyncMcpToolCallback;
 import org.springframework.ai.model.ModelOptionsUtils;
-import org.springframework.ai.tool.definition.DefaultToolDefinition;
+import org.springframework.ai.tool.definition.ToolDefinition;
 import org.springframework.ai.tool.execution.ToolExecutionException;
+import reactor.core.publisher.Mono;
 
 import java.util.Map;
 import lombok.extern.slf4j.Slf4j;
@@ -17,6 +18,10 @@ public class CustomAsyncMcpToolCallback extends AsyncMcpToolCallback {
     private final McpAsyncClient asyncMcpClient;
 
     private final McpSchema.Tool tool;
+
+    //工具发现时构建一次的工具定义 每次问答直接复用
+    private final ToolDefinition toolDefinition;
+
     /**
      * Creates a new {@code SyncMcpToolCallback} instance.
      *
@@ -24,29 +29,54 @@ public class CustomAsyncMcpToolCallback extends AsyncMcpToolCallback {
      * @param tool      the MCP tool definition to adapt
      */
     public CustomAsyncMcpToolCallback(McpAsyncClient asyncMcpClient, McpSchema.Tool tool) {
+        this(asyncMcpClient, tool, 0);
+    }
+
+    /**
+     * Creates a new {@code SyncMcpToolCallback} instance.
+     *
+     * @param asyncMcpClient the MCP client to use for tool execution
+     * @param tool           the MCP tool definition to adapt
+     * @param schemaMaxChars 工具 schema JSON 的长度上限，小于等于0时不精简
+     */
+    public CustomAsyncMcpToolCallback(McpAsyncClient asyncMcpClient, McpSchema.Tool tool, int schemaMaxChars) {
         super(asyncMcpClient, tool);
         this.asyncMcpClient = asyncMcpClient;
         this.tool = tool;
+        this.toolDefinition = McpToolDefinitionUtils.buildToolDefinition(asyncMcpClient.getClientInfo().name(), tool, schemaMaxChars);
+    }
+
+    @Override
+    public ToolDefinition getToolDefinition() {
+        return toolDefinition;
     }
 
     public String call(String functionInput) {
-        try {
-            Map<String, Object> arguments = ModelOptionsUtils.jsonToMap(functionInput);
-            // Note that we use the original tool name here, not the adapted one from
-            // getToolDefinition
-            return this.asyncMcpClient.callTool(new McpSchema.CallToolRequest(this.tool.name(), arguments)).map(response -> {
-                if (response.isError() != null && response.isError()) {
-                    log.warn("tools exec response error: {}", response);
-                    throw new ToolExecutionException(new DefaultToolDefinition(tool.name(),tool.description(), JSONUtil.toJsonStr(tool.inputSchema())),new IllegalStateException("Error calling tool: " + response.content()));
-                }
-                return ModelOptionsUtils.toJsonString(response.content());
-            }).block();
-        } catch (ToolExecutionException e) {
-            throw e;
-        } catch (Exception e) {
-            log.error("tools exec response error  tool info {}", JsonUtil.encodeToString(tool), e);
-            throw new ToolExecutionException(new DefaultToolDefinition(tool.name(), tool.description(), JSONUtil.toJsonStr(tool.inputSchema())), new IllegalStateException("Error calling tool exception: " + e.getMessage()));
-        }
+        return callAsync(functionInput).block();
+    }
+
+    /**
+     * 非阻塞地执行工具调用。
+     *
+     * @param functionInput 大模型生成的工具参数 json
+     * @return 工具返回内容的 json，调用失败时以 {@link ToolExecutionException} 结束
+     */
+    public Mono<String> callAsync(String functionInput) {
+        return Mono.fromCallable(() -> ModelOptionsUtils.jsonToMap(functionInput))
+                // Note that we use the original tool name here, not the adapted one from
+                // getToolDefinition
+                .flatMap(arguments -> this.asyncMcpClient.callTool(new McpSchema.CallToolRequest(this.tool.name(), arguments)))
+                .map(response -> {
+                    if (response.isError() != null && response.isError()) {
+                        log.warn("tools exec response error: {}", response);
+                        throw new ToolExecutionException(toolDefinition, new IllegalStateException("Error calling tool: " + response.content()));
+                    }
+                    return ModelOptionsUtils.toJsonString(response.content());
+                })
+                .onErrorMap(e -> !(e instanceof ToolExecutionException), e -> {
+                    log.error("tools exec response error  tool info {}", JsonUtil.encodeToString(tool), e);
+                    return new ToolExecutionException(toolDefinition, new IllegalStateException("Error calling tool exception: " + e.getMessage()));
+                });
     }
 
 }
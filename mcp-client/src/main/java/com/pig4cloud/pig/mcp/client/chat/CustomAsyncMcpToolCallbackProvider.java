@@ -6,28 +6,67 @@ import org.springframework.ai.mcp.AsyncMcpToolCallbackProvider;
 import org.springframework.ai.tool.ToolCallback;
 import org.springframework.ai.tool.util.ToolUtils;
 import org.springframework.util.Assert;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
-import java.util.ArrayList;
+import java.time.Duration;
 import java.util.List;
 import java.util.function.BiPredicate;
+import lombok.extern.slf4j.Slf4j;
 
+@Slf4j
 public class CustomAsyncMcpToolCallbackProvider extends AsyncMcpToolCallbackProvider {
 
+    /**
+     * Default timeout of a single client when discovering tools.
+     */
+    private static final Duration DEFAULT_DISCOVERY_TIMEOUT = Duration.ofSeconds(30);
+
     private final List<McpAsyncClient> mcpClients;
 
     private final BiPredicate<McpAsyncClient, McpSchema.Tool> toolFilter;
 
+    private final Duration discoveryTimeout;
+
+    private final int toolSchemaMaxChars;
+
     /**
-     * Constructor for CustomSyncMcpToolCallbackProvider with tool filter.
+     * Constructor for CustomSyncMcpToolCallbackProvider with tool filter, discovery timeout and schema budget.
      *
-     * @param toolFilter The filter to apply to tools.
-     * @param mcpClients The list of MCP clients.
+     * @param toolFilter         The filter to apply to tools.
+     * @param mcpClients         The list of MCP clients.
+     * @param discoveryTimeout   The timeout of a single client, slower clients are skipped. Zero or negative means no timeout.
+     * @param toolSchemaMaxChars The size budget of a tool input schema, larger schemas are minified. 0 disables minifying.
      */
-    public CustomAsyncMcpToolCallbackProvider(BiPredicate<McpAsyncClient, McpSchema.Tool> toolFilter, List<McpAsyncClient> mcpClients) {
+    public CustomAsyncMcpToolCallbackProvider(BiPredicate<McpAsyncClient, McpSchema.Tool> toolFilter, List<McpAsyncClient> mcpClients, Duration discoveryTimeout, int toolSchemaMaxChars) {
         Assert.notNull(mcpClients, "MCP clients must not be null");
         Assert.notNull(toolFilter, "Tool filter must not be null");
+        Assert.notNull(discoveryTimeout, "Discovery timeout must not be null");
         this.mcpClients = mcpClients;
         this.toolFilter = toolFilter;
+        this.discoveryTimeout = discoveryTimeout;
+        this.toolSchemaMaxChars = toolSchemaMaxChars;
+    }
+
+    /**
+     * Constructor for CustomSyncMcpToolCallbackProvider with tool filter and discovery timeout.
+     *
+     * @param toolFilter       The filter to apply to tools.
+     * @param mcpClients       The list of MCP clients.
+     * @param discoveryTimeout The timeout of a single client, slower clients are skipped. Zero or negative means no timeout.
+     */
+    public CustomAsyncMcpToolCallbackProvider(BiPredicate<McpAsyncClient, McpSchema.Tool> toolFilter, List<McpAsyncClient> mcpClients, Duration discoveryTimeout) {
+        this(toolFilter, mcpClients, discoveryTimeout, 0);
+    }
+
+    /**
+     * Constructor for CustomSyncMcpToolCallbackProvider with tool filter.
+     *
+     * @param toolFilter The filter to apply to tools.
+     * @param mcpClients The list of MCP clients.
+     */
+    public CustomAsyncMcpToolCallbackProvider(BiPredicate<McpAsyncClient, McpSchema.Tool> toolFilter, List<McpAsyncClient> mcpClients) {
+        this(toolFilter, mcpClients, DEFAULT_DISCOVERY_TIMEOUT);
     }
 
     /**
@@ -41,30 +80,51 @@ public class CustomAsyncMcpToolCallbackProvider extends AsyncMcpToolCallbackProv
 
     /**
      * Get the tool callbacks.
+     * <p>
+     * All clients are subscribed at the same time, so the cost is the slowest client instead of the sum of all clients.
+     * A client that fails or exceeds the timeout contributes no tools.
      *
      * @return An array of ToolCallback objects.
      */
     @Override
     public ToolCallback[] getToolCallbacks() {
+        ToolCallback[] toolCallbacks = asyncToolCallbacks().collectList()
+                .map(list -> list.toArray(new ToolCallback[0]))
+                .block();
+        validateToolCallbacks(toolCallbacks);
+        return toolCallbacks;
+    }
 
-        List<ToolCallback> toolCallbackList = new ArrayList<>();
-
-        for (McpAsyncClient mcpClient : this.mcpClients) {
-
-            ToolCallback[] toolCallbacks = mcpClient.listTools()
-                    .map(response -> response.tools()
-                            .stream()
-                            .filter(tool -> toolFilter.test(mcpClient, tool))
-                            .map(tool -> new CustomAsyncMcpToolCallback(mcpClient, tool))
-                            .toArray(ToolCallback[]::new))
-                    .block();
-
-            validateToolCallbacks(toolCallbacks);
+    /**
+     * Discover the tools of all clients concurrently.
+     *
+     * @return A Flux of ToolCallback objects, in no particular order.
+     */
+    public Flux<ToolCallback> asyncToolCallbacks() {
+        return Flux.fromIterable(this.mcpClients)
+                .flatMap(mcpClient -> withDiscoveryTimeout(mcpClient.listTools()
+                        .flatMapMany(response -> Flux.fromIterable(response.tools()))
+                        .filter(tool -> toolFilter.test(mcpClient, tool))
+                        .<ToolCallback>map(tool -> new CustomAsyncMcpToolCallback(mcpClient, tool, toolSchemaMaxChars))
+                        .collectList())
+                        .onErrorResume(e -> {
+                            log.warn("【MCP获取工具】 客户端 {} 获取工具列表失败或超时({}), 忽略该客户端的工具", mcpClient.getClientInfo().name(), discoveryTimeout, e);
+                            return Mono.just(List.of());
+                        }))
+                .flatMapIterable(list -> list);
+    }
 
-            toolCallbackList.addAll(List.of(toolCallbacks));
+    /**
+     * Apply the discovery timeout, a zero or negative timeout means no timeout, the same as the sync provider.
+     *
+     * @param discovery The discovery of a single client.
+     * @return The discovery with the timeout applied.
+     */
+    private Mono<List<ToolCallback>> withDiscoveryTimeout(Mono<List<ToolCallback>> discovery) {
+        if (discoveryTimeout.isZero() || discoveryTimeout.isNegative()) {
+            return discovery;
         }
-
-        return toolCallbackList.toArray(new ToolCallback[0]);
+        return discovery.timeout(discoveryTimeout);
     }
 
     /**
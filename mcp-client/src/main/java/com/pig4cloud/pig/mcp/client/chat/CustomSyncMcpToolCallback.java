@@ -1,12 +1,12 @@
 package com.pig4cloud.pig.mcp.client.chat;
 
-import cn.hutool.json.JSONUtil;
+import com.pig4cloud.pig.mcp.client.utils.McpToolDefinitionUtils;
 import com.pig4cloud.pig.mcp.common.util.JsonUtil;
 import io.modelcontextprotocol.client.McpSyncClient;
 import io.modelcontextprotocol.spec.McpSchema;
 import org.springframework.ai.mcp.SyncMcpToolCallback;
 import org.springframework.ai.model.ModelOptionsUtils;
-import org.springframework.ai.tool.definition.DefaultToolDefinition;
+import org.springframework.ai.tool.definition.ToolDefinition;
 import org.springframework.ai.tool.execution.ToolExecutionException;
 
 import java.util.Map;
@@ -18,6 +18,18 @@ public class CustomSyncMcpToolCallback extends SyncMcpToolCallback {
 
     private final McpSchema.Tool tool;
 
+    private final McpToolResultCache mcpToolResultCache;
+
+    private final String serverKey;
+
+    private final long cacheTtlMillis;
+
+    //每次实际调用工具前执行 用于刷新客户端的访问时间 可为 null
+    private final Runnable onCall;
+
+    //工具发现时构建一次的工具定义 每次问答直接复用
+    private final ToolDefinition toolDefinition;
+
     /**
      * Creates a new {@code SyncMcpToolCallback} instance.
      *
@@ -25,12 +37,75 @@ public class CustomSyncMcpToolCallback extends SyncMcpToolCallback {
      * @param tool      the MCP tool definition to adapt
      */
     public CustomSyncMcpToolCallback(McpSyncClient mcpClient, McpSchema.Tool tool) {
+        this(mcpClient, tool, null, null, 0L, 0, null);
+    }
+
+    /**
+     * Creates a new {@code SyncMcpToolCallback} instance whose results are cached.
+     *
+     * @param mcpClient          the MCP client to use for tool execution
+     * @param tool               the MCP tool definition to adapt
+     * @param mcpToolResultCache 工具结果缓存，为 null 时不缓存
+     * @param serverKey          MCP 服务标识，参与缓存 key 的计算
+     * @param cacheTtlMillis     缓存有效期（毫秒），小于等于0时不缓存
+     * @param schemaMaxChars     工具 schema JSON 的长度上限，小于等于0时不精简
+     * @param onCall             每次实际调用工具前执行，用于刷新客户端的访问时间，可为 null
+     */
+    public CustomSyncMcpToolCallback(McpSyncClient mcpClient, McpSchema.Tool tool, McpToolResultCache mcpToolResultCache, String serverKey, long cacheTtlMillis, int schemaMaxChars, Runnable onCall) {
         super(mcpClient, tool);
         this.mcpClient = mcpClient;
         this.tool = tool;
+        this.mcpToolResultCache = mcpToolResultCache;
+        this.serverKey = serverKey;
+        this.cacheTtlMillis = cacheTtlMillis;
+        this.onCall = onCall;
+        this.toolDefinition = McpToolDefinitionUtils.buildToolDefinition(mcpClient.getClientInfo().name(), tool, schemaMaxChars);
+    }
+
+    private CustomSyncMcpToolCallback(CustomSyncMcpToolCallback source, long cacheTtlMillis) {
+        super(source.mcpClient, source.tool);
+        this.mcpClient = source.mcpClient;
+        this.tool = source.tool;
+        this.mcpToolResultCache = source.mcpToolResultCache;
+        this.serverKey = source.serverKey;
+        this.cacheTtlMillis = cacheTtlMillis;
+        this.onCall = source.onCall;
+        this.toolDefinition = source.toolDefinition;
+    }
+
+    /**
+     * 以指定的缓存有效期创建工具回调，共享客户端缓存的工具回调不带有效期，由各智能体按自己的配置设置。
+     *
+     * @param cacheTtlMillis 缓存有效期（毫秒），小于等于0时不缓存
+     * @return 有效期相同时返回自身，否则返回复用同一工具定义的新实例
+     */
+    public CustomSyncMcpToolCallback withCacheTtl(long cacheTtlMillis) {
+        return cacheTtlMillis == this.cacheTtlMillis ? this : new CustomSyncMcpToolCallback(this, cacheTtlMillis);
+    }
+
+    @Override
+    public ToolDefinition getToolDefinition() {
+        return toolDefinition;
+    }
+
+    /**
+     * MCP 服务端定义的原始工具名，与 MCP 配置中 {@code toolCacheTtl} 的 key 对应
+     */
+    public String getOriginalToolName() {
+        return tool.name();
     }
 
     public String call(String functionInput) {
+        if (mcpToolResultCache == null || cacheTtlMillis <= 0) {
+            return doCall(functionInput);
+        }
+        return mcpToolResultCache.get(serverKey, tool.name(), functionInput, cacheTtlMillis, () -> doCall(functionInput));
+    }
+
+    private String doCall(String functionInput) {
+        if (onCall != null) {
+            onCall.run();
+        }
         try {
             Map<String, Object> arguments = ModelOptionsUtils.jsonToMap(functionInput);
             // Note that we use the original tool name here, not the adapted one from
@@ -38,14 +113,14 @@ public class CustomSyncMcpToolCallback extends SyncMcpToolCallback {
             McpSchema.CallToolResult response = this.mcpClient.callTool(new McpSchema.CallToolRequest(this.tool.name(), arguments));
             if (response.isError() != null && response.isError()) {
                 log.error("tools exec response error: {}", response);
-                throw new ToolExecutionException(new DefaultToolDefinition(tool.name(), tool.description(), JSONUtil.toJsonStr(tool.inputSchema())), new IllegalStateException("Error calling tool: " + response.content()));
+                throw new ToolExecutionException(toolDefinition, new IllegalStateException("Error calling tool: " + response.content()));
             }
             return ModelOptionsUtils.toJsonString(response.content());
         } catch (ToolExecutionException e) {
             throw e;
         } catch (Exception e) {
             log.error("tools exec response error  tool info {}", JsonUtil.encodeToString(tool), e);
-            throw new ToolExecutionException(new DefaultToolDefinition(tool.name(), tool.description(), JSONUtil.toJsonStr(tool.inputSchema())), new IllegalStateException("Error calling tool exception: " + e.getMessage()));
+            throw new ToolExecutionException(toolDefinition, new IllegalStateException("Error calling tool exception: " + e.getMessage()));
         }
     }
 
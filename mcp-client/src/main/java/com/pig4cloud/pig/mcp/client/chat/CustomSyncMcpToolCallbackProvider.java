@@ -1,5 +1,6 @@
 package com.pig4cloud.pig.mcp.client.chat;
 
+import com.pig4cloud.pig.mcp.client.manager.model.McpClientInfo;
 import io.modelcontextprotocol.client.McpSyncClient;
 import io.modelcontextprotocol.spec.McpSchema;
 import org.springframework.ai.mcp.SyncMcpToolCallbackProvider;
@@ -9,16 +10,35 @@ import org.springframework.util.Assert;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BiPredicate;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
 
+@Slf4j
 public class CustomSyncMcpToolCallbackProvider extends SyncMcpToolCallbackProvider {
 
     private final List<McpSyncClient> mcpClients;
 
     private final BiPredicate<McpSyncClient, McpSchema.Tool> toolFilter;
 
+    private final Map<String, McpClientInfo> mcpClientInfos;
+
+    private final Map<String, Map<String, Long>> toolCacheTtls;
+
+    private final long toolsCacheTtlMillis;
+
+    private final Executor discoveryExecutor;
+
+    private final long discoveryTimeoutMillis;
+
     /**
      * Constructor for CustomSyncMcpToolCallbackProvider with tool filter.
+     * Tools are discovered one client after another on the calling thread.
      *
      * @param toolFilter The filter to apply to tools.
      * @param mcpClients The list of MCP clients.
@@ -28,6 +48,11 @@ public class CustomSyncMcpToolCallbackProvider extends SyncMcpToolCallbackProvid
         Assert.notNull(toolFilter, "Tool filter must not be null");
         this.mcpClients = mcpClients;
         this.toolFilter = toolFilter;
+        this.mcpClientInfos = null;
+        this.toolCacheTtls = Map.of();
+        this.toolsCacheTtlMillis = 0;
+        this.discoveryExecutor = Runnable::run;
+        this.discoveryTimeoutMillis = 0;
     }
 
     /**
@@ -39,29 +64,127 @@ public class CustomSyncMcpToolCallbackProvider extends SyncMcpToolCallbackProvid
         this((mcpClient, tool) -> true, mcpClients);
     }
 
+    /**
+     * Constructor for CustomSyncMcpToolCallbackProvider backed by the tool cache of each registered client.
+     * Clients whose cache is missing or expired are queried concurrently on the given executor.
+     *
+     * @param mcpClientInfos         The registered MCP clients keyed by the client name of the agent.
+     * @param toolCacheTtls          The result cache ttl in seconds of each tool keyed by the client name of the agent, shared clients are cached without ttl and the agent's own ttl is applied here.
+     * @param toolsCacheTtlMillis    The tool cache ttl in milliseconds, less than or equal to 0 disables the cache.
+     * @param discoveryExecutor      The executor used to query the clients concurrently.
+     * @param discoveryTimeoutMillis The timeout of a single client, slower clients are skipped for this request, less than or equal to 0 means no timeout.
+     */
+    public CustomSyncMcpToolCallbackProvider(Map<String, McpClientInfo> mcpClientInfos, Map<String, Map<String, Long>> toolCacheTtls, long toolsCacheTtlMillis, Executor discoveryExecutor, long discoveryTimeoutMillis) {
+        Assert.notNull(mcpClientInfos, "MCP clients must not be null");
+        Assert.notNull(toolCacheTtls, "Tool cache ttls must not be null");
+        Assert.notNull(discoveryExecutor, "Discovery executor must not be null");
+        this.mcpClients = mcpClientInfos.values().stream().map(McpClientInfo::getMcpSyncClient).toList();
+        this.toolFilter = (mcpClient, tool) -> true;
+        this.mcpClientInfos = mcpClientInfos;
+        this.toolCacheTtls = toolCacheTtls;
+        this.toolsCacheTtlMillis = toolsCacheTtlMillis;
+        this.discoveryExecutor = discoveryExecutor;
+        this.discoveryTimeoutMillis = discoveryTimeoutMillis;
+    }
+
     /**
      * Get the tool callbacks.
+     * <p>
+     * All clients are queried at the same time, so the cost is the slowest client instead of the sum of all clients.
+     * A client that fails, exceeds the timeout or is rejected by the executor contributes its last loaded tools, or none, to this request.
      *
      * @return An array of ToolCallback objects.
      */
     @Override
     public ToolCallback[] getToolCallbacks() {
 
-        var toolCallbacks = new ArrayList<>();
+        List<CompletableFuture<List<ToolCallback>>> futures = new ArrayList<>();
 
-        this.mcpClients.stream().forEach(mcpClient -> {
-            toolCallbacks.addAll(mcpClient.listTools()
+        if (this.mcpClientInfos != null) {
+            this.mcpClientInfos.forEach((clientName, mcpClientInfo) -> {
+                Map<String, Long> toolCacheTtl = toolCacheTtls.getOrDefault(clientName, Map.of());
+                // 缓存命中时直接返回，不占用线程池；未命中时同一客户端只有一个 listTools 请求，各请求共享其结果
+                CompletableFuture<List<ToolCallback>> future = withFallback(mcpClientInfo.getClientName(),
+                        mcpClientInfo.loadToolCallbacksAsync(toolsCacheTtlMillis, discoveryExecutor).thenApply(List::of),
+                        () -> {
+                            ToolCallback[] last = mcpClientInfo.getLastToolCallbacks();
+                            return last == null ? List.of() : List.of(last);
+                        });
+                futures.add(toolCacheTtl.isEmpty() ? future : future.thenApply(callbacks -> withToolCacheTtl(callbacks, toolCacheTtl)));
+            });
+        } else {
+            this.mcpClients.forEach(mcpClient -> futures.add(discoverAsync(mcpClient.getClientInfo().name(), () -> mcpClient.listTools()
                     .tools()
                     .stream()
                     .filter(tool -> toolFilter.test(mcpClient, tool))
-                    .map(tool -> new CustomSyncMcpToolCallback(mcpClient, tool))
-                    .toList());
-        });
+                    .map(tool -> (ToolCallback) new CustomSyncMcpToolCallback(mcpClient, tool))
+                    .toList())));
+        }
+
+        var toolCallbacks = new ArrayList<ToolCallback>();
+        futures.forEach(future -> toolCallbacks.addAll(future.join()));
         var array = toolCallbacks.toArray(new ToolCallback[0]);
         validateToolCallbacks(array);
         return array;
     }
 
+    /**
+     * Discover the tools of a single client on the discovery executor with its own timeout.
+     *
+     * @param clientName The client name, used for logging.
+     * @param discovery  The discovery action.
+     * @return A future that never completes exceptionally, failed, slow or rejected clients yield an empty list.
+     */
+    private CompletableFuture<List<ToolCallback>> discoverAsync(String clientName, Supplier<List<ToolCallback>> discovery) {
+        CompletableFuture<List<ToolCallback>> future;
+        try {
+            future = CompletableFuture.supplyAsync(discovery, discoveryExecutor);
+        } catch (RejectedExecutionException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        return withFallback(clientName, future, List::of);
+    }
+
+    /**
+     * Apply the discovery timeout to a derived future and fall back when the discovery fails, times out or is rejected.
+     * The timeout never completes the source future, which may be shared by other requests.
+     *
+     * @param clientName The client name, used for logging.
+     * @param source     The discovery future.
+     * @param fallback   The tools used instead, for example the last loaded tools of the client.
+     * @return A future that never completes exceptionally.
+     */
+    private CompletableFuture<List<ToolCallback>> withFallback(String clientName, CompletableFuture<List<ToolCallback>> source, Supplier<List<ToolCallback>> fallback) {
+        CompletableFuture<List<ToolCallback>> future = source.copy();
+        if (discoveryTimeoutMillis > 0) {
+            future = future.orTimeout(discoveryTimeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        return future.exceptionally(e -> {
+            List<ToolCallback> tools = fallback.get();
+            log.warn("【MCP获取工具】 客户端 {} 获取工具列表失败、超时({}ms)或线程池已满, 本次请求使用上次加载的 {} 个工具", clientName, discoveryTimeoutMillis, tools.size(), e);
+            return tools;
+        });
+    }
+
+    /**
+     * Apply the result cache ttl configured by the agent to the shared tool callbacks.
+     *
+     * @param toolCallbacks The shared tool callbacks of a client.
+     * @param toolCacheTtl  The result cache ttl in seconds of each tool, tools not configured are not cached.
+     * @return The tool callbacks of this agent.
+     */
+    private List<ToolCallback> withToolCacheTtl(List<ToolCallback> toolCallbacks, Map<String, Long> toolCacheTtl) {
+        return toolCallbacks.stream()
+                .map(toolCallback -> {
+                    if (!(toolCallback instanceof CustomSyncMcpToolCallback callback)) {
+                        return toolCallback;
+                    }
+                    Long ttlSeconds = toolCacheTtl.get(callback.getOriginalToolName());
+                    return (ToolCallback) callback.withCacheTtl(ttlSeconds == null ? 0L : TimeUnit.SECONDS.toMillis(ttlSeconds));
+                })
+                .toList();
+    }
+
     /**
      * Validate the tool callbacks to ensure there are no duplicate tool names.
      *
@@ -0,0 +1,139 @@
+package com.pig4cloud.pig.mcp.client.chat;
+
+import cn.hutool.crypto.digest.DigestUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.pig4cloud.pig.mcp.common.properties.McpClientProperties;
+import jakarta.annotation.PostConstruct;
+import org.springframework.ai.model.ModelOptionsUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 幂等 MCP 工具调用结果缓存
+ * <p>
+ * 地理编码、POI 搜索、图表链接生成等纯查询类工具在不同用户之间经常以相同参数重复调用，
+ * 在 MCP 配置的 {@code toolCacheTtl} 中为工具指定有效期后，相同（服务、工具名、参数）的调用在有效期内直接返回缓存结果，
+ * 不再经过网络或 stdio 子进程。未配置的工具不缓存，工具执行失败的结果也不会被缓存。
+ * <p>
+ * 缓存 key 由共享连接池的 key、工具名、有效期以及按字段名排序后的参数 JSON 计算摘要得到，参数字段顺序不同也能命中，
+ * 共用同一连接但配置了不同有效期的智能体各自缓存，互不读取对方按更长有效期缓存的结果；
+ * 容量由 {@code toolResultCacheMaxSize} 限制，超出后按最近最少使用淘汰，每个条目按各自工具的有效期过期。
+ */
+@Slf4j
+@Component
+public class McpToolResultCache {
+    /**
+     * 参数规范化使用的 ObjectMapper，Map 按 key 排序输出。
+     */
+    private static final ObjectMapper CANONICAL_MAPPER = new ObjectMapper().configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+
+    @Autowired
+    private McpClientProperties mcpClientProperties;
+
+    private Cache<String, CachedResult> resultCache;
+
+    //每个工具的命中统计 <工具名,ToolCacheStats>
+    private final ConcurrentHashMap<String, ToolCacheStats> toolCacheStatsMap = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        long maxSize = Math.max(mcpClientProperties.getToolResultCacheMaxSize(), 0L);
+        resultCache = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+        log.info("【MCP TOOL RESULT CACHE】 工具结果缓存初始化完成, 最大条目数:{}", maxSize);
+    }
+
+    /**
+     * 优先从缓存获取工具调用结果，未命中或已过期时执行调用并缓存结果。
+     *
+     * @param serverKey     MCP 服务标识（共享连接池的 key）
+     * @param toolName      工具名称
+     * @param functionInput 工具参数 JSON
+     * @param ttlMillis     缓存有效期（毫秒），小于等于0时不缓存
+     * @param loader        实际执行工具调用的逻辑，抛出异常时结果不会被缓存
+     * @return 工具调用结果
+     */
+    public String get(String serverKey, String toolName, String functionInput, long ttlMillis, Supplier<String> loader) {
+        if (ttlMillis <= 0 || mcpClientProperties.getToolResultCacheMaxSize() <= 0) {
+            return loader.get();
+        }
+        String cacheKey = buildCacheKey(serverKey, toolName, functionInput, ttlMillis);
+        ToolCacheStats toolCacheStats = toolCacheStatsMap.computeIfAbsent(toolName, key -> new ToolCacheStats());
+        CachedResult cachedResult = resultCache.getIfPresent(cacheKey);
+        if (cachedResult != null && cachedResult.expireAt() > System.currentTimeMillis()) {
+            toolCacheStats.hits.increment();
+            log.debug("【MCP TOOL RESULT CACHE】 工具 {} 命中缓存", toolName);
+            return cachedResult.result();
+        }
+        if (cachedResult != null) {
+            resultCache.asMap().remove(cacheKey, cachedResult);
+        }
+        toolCacheStats.misses.increment();
+        String result = loader.get();
+        resultCache.put(cacheKey, new CachedResult(result, System.currentTimeMillis() + ttlMillis));
+        return result;
+    }
+
+    /**
+     * 获取缓存统计信息，包括缓存条目数、淘汰次数以及每个工具的命中、未命中次数。
+     *
+     * @return 缓存统计信息
+     */
+    public Map<String, Object> stats() {
+        CacheStats cacheStats = resultCache.stats();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("size", resultCache.size());
+        stats.put("maxSize", mcpClientProperties.getToolResultCacheMaxSize());
+        stats.put("evictionCount", cacheStats.evictionCount());
+        Map<String, Map<String, Long>> tools = new LinkedHashMap<>();
+        toolCacheStatsMap.forEach((toolName, toolCacheStats) -> {
+            long hits = toolCacheStats.hits.sum();
+            long misses = toolCacheStats.misses.sum();
+            tools.put(toolName, Map.of("hits", hits, "misses", misses));
+        });
+        stats.put("tools", tools);
+        return stats;
+    }
+
+    private String buildCacheKey(String serverKey, String toolName, String functionInput, long ttlMillis) {
+        String canonicalInput;
+        try {
+            Map<String, Object> arguments = ModelOptionsUtils.jsonToMap(functionInput);
+            canonicalInput = CANONICAL_MAPPER.writeValueAsString(arguments);
+        } catch (Exception e) {
+            // 参数不是合法的 JSON 对象时按原文计算，结果交由工具调用本身报错
+            canonicalInput = functionInput;
+        }
+        return DigestUtil.sha256Hex(serverKey + "|" + toolName + "|" + ttlMillis + "|" + canonicalInput);
+    }
+
+    /**
+     * 缓存的工具调用结果
+     *
+     * @param result   工具调用结果
+     * @param expireAt 过期时间（毫秒时间戳）
+     */
+    private record CachedResult(String result, long expireAt) {
+    }
+
+    /**
+     * 单个工具的命中统计
+     */
+    private static class ToolCacheStats {
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+    }
+}
@@ -0,0 +1,200 @@
+package com.pig4cloud.pig.mcp.client.chat;
+
+import com.pig4cloud.pig.mcp.common.properties.McpClientProperties;
+import jakarta.annotation.Resource;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.function.FunctionCallback;
+import org.springframework.ai.model.tool.DefaultToolExecutionResult;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.springframework.ai.model.tool.ToolExecutionResult;
+import org.springframework.ai.tool.execution.ToolExecutionException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 工具调用执行器
+ * <p>
+ * 大模型同一轮返回的多个工具调用之间相互独立（例如同时查询北京和上海的天气），
+ * {@code ToolCallingManager} 会依次串行执行，该执行器改为并发执行，每个工具调用单独计时，
+ * 通过 {@link ToolCallListener} 在每个工具开始和结束时回调，最后按大模型返回的顺序合并为一条 {@link ToolResponseMessage}。
+ * <p>
+ * 与 {@code ToolCallingManager} 的默认行为保持一致：工具执行失败或超时时，把异常信息作为工具结果返回给大模型整理，
+ * 单个工具失败不影响同一轮的其他工具。
+ */
+@Slf4j
+@Component
+public class ParallelToolCallExecutor {
+    @Autowired
+    private McpClientProperties mcpClientProperties; // 注入 McpClientProperties，用于获取工具调用超时时间
+
+    @Resource(name = "mcpToolCallThreadPool")
+    private ExecutorService mcpToolCallThreadPool; // 注入线程池，用于并发执行工具调用
+
+    /**
+     * 并发执行一轮工具调用，阻塞直到所有工具完成或超时
+     * <p>
+     * 等待期间调用线程被中断（客户端断开后取消工具调用任务）时，中断所有仍在执行的工具并抛出 {@link CancellationException}；
+     * 超时的工具同样会被中断，不再占用工具调用线程。
+     *
+     * @param prompt       当前 Prompt，工具回调从其 {@link ToolCallingChatOptions} 中获取
+     * @param chatResponse 包含工具调用的大模型响应
+     * @param listener     工具开始和结束时的回调
+     * @return 工具执行结果，对话历史中追加了助手消息和工具响应消息
+     */
+    public ToolExecutionResult executeToolCalls(Prompt prompt, ChatResponse chatResponse, ToolCallListener listener) {
+        AssistantMessage assistantMessage = chatResponse.getResult().getOutput();
+        Map<String, FunctionCallback> toolCallbackMap = toolCallbackMap(prompt);
+        long timeoutMillis = mcpClientProperties.getToolCallTimeout();
+        // 工具执行任务 用于中断仍在执行的工具
+        List<Future<?>> tasks = new ArrayList<>();
+        List<CompletableFuture<ToolResponseMessage.ToolResponse>> futures = assistantMessage.getToolCalls().stream()
+                .map(toolCall -> {
+                    listener.onToolStart(toolCall);
+                    FunctionCallback toolCallback = toolCallbackMap.get(toolCall.name());
+                    CompletableFuture<String> future;
+                    if (toolCallback == null) {
+                        future = CompletableFuture.completedFuture(toolNotFound(toolCall));
+                    } else {
+                        CompletableFuture<String> result = new CompletableFuture<>();
+                        tasks.add(mcpToolCallThreadPool.submit(() -> {
+                            try {
+                                result.complete(toolCallback.call(toolCall.arguments()));
+                            } catch (Throwable e) {
+                                result.completeExceptionally(e);
+                            }
+                        }));
+                        future = result;
+                    }
+                    if (timeoutMillis > 0) {
+                        future = future.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+                    }
+                    return future
+                            .exceptionally(e -> toolErrorMessage(toolCall, e))
+                            .thenApply(responseData -> {
+                                ToolResponseMessage.ToolResponse toolResponse = new ToolResponseMessage.ToolResponse(toolCall.id(), toolCall.name(), responseData);
+                                listener.onToolResult(toolResponse);
+                                return toolResponse;
+                            });
+                })
+                .toList();
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("工具调用已取消");
+        } catch (ExecutionException e) {
+            throw new CompletionException(e.getCause());
+        } finally {
+            // 已完成的任务不受影响，超时或被取消时中断仍在执行的工具
+            tasks.forEach(task -> task.cancel(true));
+        }
+        List<ToolResponseMessage.ToolResponse> toolResponses = futures.stream().map(CompletableFuture::join).toList();
+        return DefaultToolExecutionResult.builder()
+                .conversationHistory(buildConversationHistory(prompt, assistantMessage, new ToolResponseMessage(toolResponses)))
+                .build();
+    }
+
+    /**
+     * 以非阻塞方式并发执行单个工具调用
+     *
+     * @param toolCall     工具调用
+     * @param toolCallback 异步工具回调，为 null 时表示工具不存在
+     * @return 工具响应，不会以错误结束
+     */
+    public Mono<ToolResponseMessage.ToolResponse> executeToolCallAsync(AssistantMessage.ToolCall toolCall, CustomAsyncMcpToolCallback toolCallback) {
+        Mono<String> responseData = toolCallback == null ? Mono.just(toolNotFound(toolCall)) : toolCallback.callAsync(toolCall.arguments());
+        long timeoutMillis = mcpClientProperties.getToolCallTimeout();
+        if (timeoutMillis > 0) {
+            responseData = responseData.timeout(Duration.ofMillis(timeoutMillis));
+        }
+        return responseData
+                .onErrorResume(e -> Mono.just(toolErrorMessage(toolCall, e)))
+                .map(data -> new ToolResponseMessage.ToolResponse(toolCall.id(), toolCall.name(), data));
+    }
+
+    /**
+     * 构建追加了助手消息和工具响应消息的对话历史
+     *
+     * @param prompt              当前 Prompt
+     * @param assistantMessage    包含工具调用的助手消息
+     * @param toolResponseMessage 工具响应消息
+     * @return 新的对话历史
+     */
+    public List<Message> buildConversationHistory(Prompt prompt, AssistantMessage assistantMessage, ToolResponseMessage toolResponseMessage) {
+        List<Message> conversationHistory = new ArrayList<>(prompt.getInstructions());
+        conversationHistory.add(assistantMessage);
+        conversationHistory.add(toolResponseMessage);
+        return conversationHistory;
+    }
+
+    private Map<String, FunctionCallback> toolCallbackMap(Prompt prompt) {
+        if (!(prompt.getOptions() instanceof ToolCallingChatOptions chatOptions) || chatOptions.getToolCallbacks() == null) {
+            return Map.of();
+        }
+        return chatOptions.getToolCallbacks().stream()
+                .collect(Collectors.toMap(FunctionCallback::getName, Function.identity(), (first, second) -> first));
+    }
+
+    private String toolNotFound(AssistantMessage.ToolCall toolCall) {
+        log.warn("【工具调用】 大模型请求的工具不存在: {}", toolCall.name());
+        return "Tool not found: " + toolCall.name();
+    }
+
+    private String toolErrorMessage(AssistantMessage.ToolCall toolCall, Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof TimeoutException) {
+            log.warn("【工具调用】 工具 {} 执行超时({}ms)", toolCall.name(), mcpClientProperties.getToolCallTimeout());
+            return "Tool call timeout: " + toolCall.name();
+        }
+        if (!(cause instanceof ToolExecutionException)) {
+            log.error("【工具调用】 工具 {} 执行异常", toolCall.name(), cause);
+        }
+        return cause.getMessage();
+    }
+
+    /**
+     * 工具调用回调，用于在每个工具开始和结束时推送事件
+     */
+    public interface ToolCallListener {
+
+        ToolCallListener NONE = new ToolCallListener() {
+        };
+
+        /**
+         * 工具开始执行
+         *
+         * @param toolCall 工具调用
+         */
+        default void onToolStart(AssistantMessage.ToolCall toolCall) {
+        }
+
+        /**
+         * 工具执行结束（包括失败和超时）
+         *
+         * @param toolResponse 工具响应
+         */
+        default void onToolResult(ToolResponseMessage.ToolResponse toolResponse) {
+        }
+    }
+}
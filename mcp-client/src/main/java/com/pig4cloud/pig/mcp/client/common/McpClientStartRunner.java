@@ -1,5 +1,6 @@
 package com.pig4cloud.pig.mcp.client.common;
 
+import com.pig4cloud.pig.mcp.client.manager.ManagerMcpSyncClientService;
 import com.pig4cloud.pig.mcp.client.registry.RegistryMcpClientService;
 import com.pig4cloud.pig.mcp.client.resource.ResourceManagerService;
 import com.pig4cloud.pig.mcp.common.constant.CommonConstants;
@@ -23,12 +24,15 @@ public class McpClientStartRunner implements ApplicationRunner {
     private ResourceManagerService resourceManagerService;
     @Autowired
     private RegistryMcpClientService registryMcpClientService;
+    @Autowired
+    private ManagerMcpSyncClientService managerMcpSyncClientService;
 
 
     @Override
     public void run(ApplicationArguments args) {
         checkNodePath();
 //        registryGlobalMcpClient();
+        warmUpStdioMcpClient();
     }
 
 
@@ -64,6 +68,15 @@ public class McpClientStartRunner implements ApplicationRunner {
     }
 
 
+    private void warmUpStdioMcpClient() {
+        try {
+            List<ChatRequestParams.McpConfig> mcpConfigs = resourceManagerService.loadJson(ChatRequestParams.McpConfig.class);
+            managerMcpSyncClientService.warmUpStdioClients(mcpConfigs);
+        } catch (Exception e) {
+            log.error("【系统初始化】预热内置 stdio MCP 客户端失败", e);
+        }
+    }
+
     private void registryGlobalMcpClient() {
         try {
             List<ChatRequestParams.McpConfig> mcpConfigs = resourceManagerService.loadJson(ChatRequestParams.McpConfig.class);
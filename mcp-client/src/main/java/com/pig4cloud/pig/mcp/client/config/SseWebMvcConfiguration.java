@@ -0,0 +1,27 @@
+package com.pig4cloud.pig.mcp.client.config;
+
+import com.pig4cloud.pig.mcp.client.handle.SseChatEventHttpMessageConverter;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+/**
+ * 流式问答 MVC 配置
+ * <p>
+ * 响应式流式问答接口 {@code /chat/ask/stream} 返回 text/event-stream 的 Flux，Spring MVC 为这类流单独创建
+ * 不超时的 SseEmitter，不受全局 {@code spring.mvc.async.request-timeout} 影响，因此这里不修改全局异步超时，
+ * 其他异步请求仍使用各环境配置的超时时间。
+ */
+@Configuration(proxyBeanMethods = false)
+public class SseWebMvcConfiguration implements WebMvcConfigurer {
+
+    /**
+     * 注册 SseChatEvent 消息转换器，放在最前面，优先于 Jackson 转换器
+     */
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        converters.add(0, new SseChatEventHttpMessageConverter());
+    }
+}
@@ -2,6 +2,8 @@ package com.pig4cloud.pig.mcp.client.controller;
 
 
 import com.pig4cloud.pig.mcp.client.chat.ChatService;
+import com.pig4cloud.pig.mcp.client.chat.McpToolResultCache;
+import com.pig4cloud.pig.mcp.client.handle.SseChatEvent;
 import com.pig4cloud.pig.mcp.client.manager.ManagerMcpSyncClientService;
 import com.pig4cloud.pig.mcp.client.manager.model.McpClientInfo;
 import com.pig4cloud.pig.mcp.client.resource.ResourceManagerService;
@@ -16,10 +18,14 @@ import io.swagger.annotations.ApiParam;
 import jakarta.servlet.http.HttpServletResponse;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
 
 import javax.validation.Valid;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import lombok.extern.slf4j.Slf4j;
 
@@ -36,6 +42,8 @@ public class ChatController {
     private McpToolService mcpToolService;
     @Autowired
     private ManagerMcpSyncClientService managerMcpSyncClientService;
+    @Autowired
+    private McpToolResultCache mcpToolResultCache;
 
     @GetMapping("/check/mpc/online")
     public R checkMcpOnline(@ApiParam(value = "智能体id") String agentId, @ApiParam(value = "sse类型 clientName 是McpClientInfo.url stdio类型 是McpClientInfo.name") String clientName) {
@@ -53,6 +61,11 @@ public class ChatController {
         return R.ok(managerMcpSyncClientService.allMcpClientMap());
     }
 
+    @GetMapping("/mcp/tool/cache/stats")
+    public R<Map<String, Object>> mcpToolCacheStats() {
+        return R.ok(mcpToolResultCache.stats());
+    }
+
     @PostMapping("/multiple/mcp/tools/info")
     public R<List<McpToolInfo>> mcpToolsInfo(@RequestBody @Valid McpToolsParam mcpToolsParam) {
         return R.ok(mcpToolService.multipleMcpClientToolsResult(mcpToolsParam.getAgentId(), mcpToolsParam.getMcpConfig()));
@@ -67,4 +80,9 @@ public class ChatController {
     public Object ask(@RequestBody @Valid ChatRequestParams chatRequestParams, HttpServletResponse response) {
         return chatService.chat(chatRequestParams, response);
     }
+
+    @PostMapping(value = "/ask/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<SseChatEvent>> askStream(@RequestBody @Valid ChatRequestParams chatRequestParams) {
+        return chatService.chatStream(chatRequestParams);
+    }
 }
@@ -0,0 +1,37 @@
+package com.pig4cloud.pig.mcp.client.enums;
+
+import lombok.Getter;
+
+/**
+ * SSE 发送缓冲区超过高水位后的处理策略
+ */
+@Getter
+public enum SseBackpressurePolicy {
+    COALESCE("coalesce", "合并缓冲区中相邻的助手消息片段"),
+    DROP("drop", "丢弃新的助手消息片段"),
+    CANCEL("cancel", "取消大模型流式输出并结束连接"),
+    ;
+
+    private String name;
+    private String description;
+
+    SseBackpressurePolicy(String name, String description) {
+        this.name = name;
+        this.description = description;
+    }
+
+    /**
+     * 根据名称获取策略，未知名称使用 {@link #COALESCE}
+     *
+     * @param name 策略名称
+     * @return 背压策略
+     */
+    public static SseBackpressurePolicy of(String name) {
+        for (SseBackpressurePolicy policy : values()) {
+            if (policy.name.equalsIgnoreCase(name)) {
+                return policy;
+            }
+        }
+        return COALESCE;
+    }
+}
@@ -7,6 +7,8 @@ public enum SseEventType {
     TOOL_ARGS("tool_args", "MCP工具参数"),
     TOOL_RESULT("tool_result", "MCP工具调用结果"),
     ASSISTANT("assistant", "助手消息"),
+    TOOL_LOOP_LIMIT("tool_loop_limit", "工具调用达到轮数或耗时上限，问答终止"),
+    DONE("done", "问答结束，包含 token 用量和耗时"),
     ;
 
     private String name;
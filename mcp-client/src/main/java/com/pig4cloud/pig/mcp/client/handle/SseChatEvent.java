@@ -0,0 +1,46 @@
+package com.pig4cloud.pig.mcp.client.handle;
+
+import com.pig4cloud.pig.mcp.client.enums.SseEventType;
+import com.pig4cloud.pig.mcp.client.utils.SseEmitterHelpUtils;
+import com.pig4cloud.pig.mcp.common.model.ChatResponseModel;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * 待发送的问答事件
+ * <p>
+ * 助手消息保存原始文本，缓冲区积压时相邻的助手消息片段可以直接拼接合并；
+ * 发送时由 {@link SseChatEventHttpMessageConverter} 直接编码为 {@link ChatResponseModel} 格式的 JSON 写入响应，
+ * 不经过 ChatResponseModel 对象和 Jackson。
+ *
+ * @param eventType 事件类型
+ * @param data      助手消息为原始文本，其他事件为已编码的 JSON
+ */
+public record SseChatEvent(SseEventType eventType, String data) {
+
+    /**
+     * 创建助手消息事件
+     *
+     * @param content 助手消息片段
+     * @return 助手消息事件
+     */
+    public static SseChatEvent assistant(String content) {
+        return new SseChatEvent(SseEventType.ASSISTANT, content);
+    }
+
+    /**
+     * 是否为助手消息片段
+     */
+    public boolean isAssistant() {
+        return eventType == SseEventType.ASSISTANT;
+    }
+
+    /**
+     * 转换为 SseEmitter 事件
+     */
+    public SseEmitter.SseEventBuilder toSseEventBuilder() {
+        if (isAssistant()) {
+            return SseEmitter.event().name(eventType.getName()).data(this);
+        }
+        return SseEmitterHelpUtils.buildSseEvent(eventType, data);
+    }
+}
@@ -0,0 +1,49 @@
+package com.pig4cloud.pig.mcp.client.handle;
+
+import com.pig4cloud.pig.mcp.client.utils.AssistantContentJsonEncoder;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * {@link SseChatEvent} 消息转换器
+ * <p>
+ * SseEmitter 的事件数据由 MVC 消息转换器写入响应输出流，助手消息事件在这里直接经
+ * {@link AssistantContentJsonEncoder} 编码写出，其他事件的数据已经是 JSON，按 UTF-8 写出。
+ * 需要排在 Jackson 转换器之前注册，否则 {@link SseChatEvent} 会被 Jackson 当作普通对象序列化。
+ */
+public class SseChatEventHttpMessageConverter extends AbstractHttpMessageConverter<SseChatEvent> {
+
+    public SseChatEventHttpMessageConverter() {
+        super(StandardCharsets.UTF_8, MediaType.APPLICATION_JSON, MediaType.TEXT_PLAIN);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return SseChatEvent.class == clazz;
+    }
+
+    @Override
+    public boolean canRead(Class<?> clazz, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected SseChatEvent readInternal(Class<? extends SseChatEvent> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("SseChatEvent 只用于输出", inputMessage);
+    }
+
+    @Override
+    protected void writeInternal(SseChatEvent event, HttpOutputMessage outputMessage) throws IOException {
+        if (event.isAssistant()) {
+            AssistantContentJsonEncoder.write(event.data(), outputMessage.getBody());
+        } else {
+            outputMessage.getBody().write(event.data().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,447 @@
+package com.pig4cloud.pig.mcp.client.handle;
+
+import com.pig4cloud.pig.mcp.client.enums.SseBackpressurePolicy;
+import com.pig4cloud.pig.mcp.client.utils.SseEmitterHelpUtils;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 带背压的 SSE 事件发送器，每个连接一个实例
+ * <p>
+ * 大模型流式输出的订阅线程只把事件放入连接自己的缓冲区，由发送线程池中的一个线程顺序写出，
+ * 客户端网络慢时阻塞的只有该连接的发送线程，不会拖住大模型的流式连接和其他连接共用的线程。
+ * <p>
+ * 缓冲区积压超过高水位后按 {@link SseBackpressurePolicy} 处理：合并相邻的助手消息片段、丢弃新的助手消息片段，
+ * 或取消大模型流式输出并以错误结束连接。工具参数、工具结果事件不会被合并或丢弃。
+ * 结束和错误在缓冲区中的事件全部写出后才生效。
+ * <p>
+ * 发送任务永远不会在调用线程上执行：发送线程池已满拒绝时，登记一次延迟重试，事件留在缓冲区中。
+ * <p>
+ * 大模型每个流式片段往往只有一两个字，逐个发送时每个字都要编码一次 JSON、flush 一次。
+ * 开启片段合并后，助手消息片段先在连接内累积，累积满 {@code coalesceMaxChars} 个字符或距第一个片段超过
+ * {@code coalesceMillis} 毫秒才作为一个事件放入缓冲区；工具事件和连接结束会立即带出已累积的内容，保证顺序不变。
+ * <p>
+ * 客户端断开、连接超时或写出失败时取消所有绑定的上游：大模型流式输出订阅、进行中的工具调用任务，
+ * 之后不再发起新一轮的大模型请求和工具调用。
+ * <p>
+ * 看门狗：连接超过 {@code idleTimeoutMillis} 既没有新事件也没有成功写出时，视为卡死，取消上游并以超时错误结束连接，
+ * 避免大模型或工具无响应时连接、缓冲区一直不释放。
+ */
+@Slf4j
+public class SseEventWriter {
+
+    //发送线程池拒绝后重试启动发送任务的间隔（毫秒）
+    private static final long DRAIN_RETRY_MILLIS = 20L;
+
+    private final SseEmitter emitter;
+
+    private final Executor executor;
+
+    private final int highWaterMark;
+
+    private final SseBackpressurePolicy policy;
+
+    private final long coalesceMillis;
+
+    private final int coalesceMaxChars;
+
+    private final long idleTimeoutMillis;
+
+    //最近一次收到事件或成功写出的时间
+    private volatile long lastActivityNanos = System.nanoTime();
+
+    //空闲检查定时任务
+    private volatile Disposable idleWatchdog;
+
+    //连接是否已经结束
+    private final AtomicBoolean completed = new AtomicBoolean(false);
+
+    //待发送事件 由 this 保护
+    private final ArrayDeque<SseChatEvent> buffer = new ArrayDeque<>();
+
+    //尚未放入缓冲区的助手消息片段 由 this 保护
+    private final StringBuilder pendingContent = new StringBuilder();
+
+    //超过高水位后合并的助手消息，逻辑上位于缓冲区末尾 由 this 保护
+    private final StringBuilder overflowContent = new StringBuilder();
+
+    //是否已登记累积片段的定时发送 由 this 保护
+    private boolean flushScheduled;
+
+    //是否有发送任务正在执行 由 this 保护
+    private boolean draining;
+
+    //是否已请求结束连接 由 this 保护
+    private boolean closing;
+
+    //结束连接时的异常 为 null 表示正常结束 由 this 保护
+    private Throwable closeError;
+
+    //被合并或丢弃的助手消息片段数量 由 this 保护
+    private long overflowCount;
+
+    //绑定到连接的大模型流式输出订阅和工具调用任务 连接结束时统一取消 取消后再绑定的会立即取消
+    private final Disposable.Composite upstreams = Disposables.composite();
+
+    /**
+     * @param emitter          SseEmitter 对象
+     * @param executor         发送线程池
+     * @param highWaterMark    缓冲区高水位（事件数量），小于等于0表示不限制
+     * @param policy           超过高水位后的处理策略
+     * @param coalesceMillis   助手消息片段最长累积时间（毫秒），小于等于0表示不合并
+     * @param coalesceMaxChars 助手消息片段累积达到该字符数时立即放入缓冲区
+     * @param idleTimeoutMillis 连接无活动超过该时间（毫秒）后回收，小于等于0表示不回收
+     */
+    public SseEventWriter(SseEmitter emitter, Executor executor, int highWaterMark, SseBackpressurePolicy policy, long coalesceMillis, int coalesceMaxChars, long idleTimeoutMillis) {
+        this.emitter = emitter;
+        this.executor = executor;
+        this.highWaterMark = highWaterMark;
+        this.policy = policy;
+        this.coalesceMillis = coalesceMillis;
+        this.coalesceMaxChars = coalesceMaxChars;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        // 客户端断开、超时或连接异常时取消上游，不再为已放弃的问答消耗 token 和工具调用
+        emitter.onCompletion(() -> cancel("连接结束"));
+        emitter.onTimeout(() -> cancel("连接超时"));
+        emitter.onError(error -> cancel("连接异常"));
+        if (idleTimeoutMillis > 0) {
+            scheduleIdleCheck(idleTimeoutMillis);
+        }
+    }
+
+    /**
+     * 绑定大模型流式输出订阅或工具调用任务，多轮工具调用时每轮都要绑定。连接已经结束时立即取消。
+     *
+     * @param upstream 订阅或任务
+     */
+    public void bindUpstream(Disposable upstream) {
+        if (completed.get()) {
+            upstream.dispose();
+            return;
+        }
+        upstreams.add(upstream);
+    }
+
+    /**
+     * 连接是否已经结束
+     */
+    public boolean isCompleted() {
+        return completed.get();
+    }
+
+    /**
+     * 放入待发送事件，不阻塞调用线程
+     *
+     * @param event 事件
+     */
+    public void send(SseChatEvent event) {
+        lastActivityNanos = System.nanoTime();
+        boolean cancel;
+        boolean schedule = false;
+        synchronized (this) {
+            if (completed.get() || closing) {
+                return;
+            }
+            if (event.isAssistant() && coalesceMillis > 0) {
+                pendingContent.append(event.data());
+                if (pendingContent.length() < coalesceMaxChars) {
+                    // 第一个片段登记定时发送，后续片段只累积
+                    if (flushScheduled) {
+                        return;
+                    }
+                    flushScheduled = true;
+                    schedule = true;
+                }
+                cancel = !schedule && flushPending();
+            } else {
+                // 工具事件之前累积的助手消息片段先放入缓冲区，保证事件顺序
+                cancel = flushPending() || enqueue(event);
+            }
+        }
+        if (schedule) {
+            Schedulers.parallel().schedule(this::flushScheduledContent, coalesceMillis, TimeUnit.MILLISECONDS);
+            return;
+        }
+        afterEnqueue(cancel);
+    }
+
+    /**
+     * 缓冲区中的事件全部写出后正常结束连接
+     */
+    public void complete() {
+        close(null);
+    }
+
+    /**
+     * 缓冲区中的事件全部写出后以错误结束连接
+     *
+     * @param error 异常
+     */
+    public void error(Throwable error) {
+        close(error);
+    }
+
+    private void close(Throwable error) {
+        boolean cancel;
+        synchronized (this) {
+            if (completed.get() || closing) {
+                return;
+            }
+            // 累积的助手消息片段在结束前带出
+            cancel = flushPending();
+            if (!cancel) {
+                closing = true;
+                closeError = error;
+            }
+        }
+        afterEnqueue(cancel);
+    }
+
+    /**
+     * 累积时间到期，把累积的助手消息片段放入缓冲区
+     */
+    private void flushScheduledContent() {
+        boolean cancel;
+        synchronized (this) {
+            flushScheduled = false;
+            if (completed.get() || closing) {
+                return;
+            }
+            cancel = flushPending();
+        }
+        afterEnqueue(cancel);
+    }
+
+    /**
+     * 把累积的助手消息片段作为一个事件放入缓冲区，返回 {@code true} 表示触发了取消
+     */
+    private boolean flushPending() {
+        if (pendingContent.isEmpty()) {
+            return false;
+        }
+        SseChatEvent event = SseChatEvent.assistant(pendingContent.toString());
+        pendingContent.setLength(0);
+        return enqueue(event);
+    }
+
+    /**
+     * 按高水位和背压策略放入事件，返回 {@code true} 表示触发了取消
+     */
+    private boolean enqueue(SseChatEvent event) {
+        if (!overflowContent.isEmpty()) {
+            if (event.isAssistant()) {
+                overflowContent.append(event.data());
+                overflowCount++;
+                return false;
+            }
+            // 工具事件之前先带出合并的助手消息，保证事件顺序
+            buffer.add(SseChatEvent.assistant(overflowContent.toString()));
+            overflowContent.setLength(0);
+        }
+        if (highWaterMark <= 0 || buffer.size() < highWaterMark) {
+            buffer.add(event);
+            return false;
+        }
+        if (policy == SseBackpressurePolicy.CANCEL) {
+            buffer.clear();
+            overflowContent.setLength(0);
+            closing = true;
+            closeError = new IllegalStateException("SSE 客户端接收过慢, 缓冲区超过 " + highWaterMark + " 个事件");
+            return true;
+        }
+        if (!event.isAssistant() || (policy == SseBackpressurePolicy.COALESCE && (buffer.peekLast() == null || !buffer.peekLast().isAssistant()))) {
+            buffer.add(event);
+            return false;
+        }
+        if (policy == SseBackpressurePolicy.COALESCE) {
+            // 在 StringBuilder 中累积，避免反复拼接字符串
+            overflowContent.append(buffer.pollLast().data()).append(event.data());
+        }
+        if (overflowCount++ == 0) {
+            log.warn("【SSE WRITER】 客户端接收过慢, 缓冲区超过 {} 个事件, 按 {} 策略处理助手消息片段", highWaterMark, policy.getName());
+        }
+        return false;
+    }
+
+    /**
+     * 事件放入缓冲区后，触发取消或启动发送任务
+     */
+    private void afterEnqueue(boolean cancel) {
+        if (cancel) {
+            log.warn("【SSE WRITER】 客户端接收过慢, 缓冲区超过 {} 个事件, 取消大模型流式输出", highWaterMark);
+            disposeUpstream();
+        }
+        synchronized (this) {
+            if (draining) {
+                return;
+            }
+            draining = true;
+        }
+        startDrain();
+    }
+
+    /**
+     * 提交发送任务，调用前需已将 {@code draining} 置为 {@code true}。线程池拒绝时复位 {@code draining} 并稍后重试
+     */
+    private void startDrain() {
+        try {
+            executor.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            synchronized (this) {
+                draining = false;
+            }
+            log.debug("【SSE WRITER】 发送线程池已满, {}ms 后重试", DRAIN_RETRY_MILLIS);
+            Schedulers.parallel().schedule(this::retryDrain, DRAIN_RETRY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 重试启动发送任务，已有发送任务或没有待处理的事件时不启动
+     */
+    private void retryDrain() {
+        synchronized (this) {
+            if (draining || (buffer.isEmpty() && overflowContent.isEmpty() && !closing)) {
+                return;
+            }
+            draining = true;
+        }
+        startDrain();
+    }
+
+    private void drain() {
+        while (true) {
+            SseChatEvent event;
+            boolean finish;
+            Throwable error;
+            long overflow;
+            synchronized (this) {
+                event = buffer.poll();
+                if (event == null && !overflowContent.isEmpty()) {
+                    event = SseChatEvent.assistant(overflowContent.toString());
+                    overflowContent.setLength(0);
+                }
+                finish = event == null && closing;
+                error = closeError;
+                overflow = overflowCount;
+                if (event == null) {
+                    draining = false;
+                }
+            }
+            if (event == null) {
+                if (finish) {
+                    finish(error, overflow);
+                }
+                return;
+            }
+            write(event);
+        }
+    }
+
+    private void write(SseChatEvent event) {
+        if (completed.get()) {
+            return;
+        }
+        try {
+            emitter.send(event.toSseEventBuilder());
+            lastActivityNanos = System.nanoTime();
+        } catch (Exception e) {
+            log.error("【SSE WRITER】 发送事件失败, 取消大模型流式输出 event:{}", event.eventType().getName(), e);
+            synchronized (this) {
+                buffer.clear();
+                pendingContent.setLength(0);
+                overflowContent.setLength(0);
+                closing = true;
+            }
+            disposeUpstream();
+            SseEmitterHelpUtils.safeError(emitter, e, completed);
+        }
+    }
+
+    private void finish(Throwable error, long overflow) {
+        if (overflow > 0) {
+            log.info("【SSE WRITER】 连接结束, 共 {} 个助手消息片段按 {} 策略处理", overflow, policy.getName());
+        }
+        if (error == null) {
+            SseEmitterHelpUtils.safeComplete(emitter, completed);
+        } else {
+            disposeUpstream();
+            SseEmitterHelpUtils.safeError(emitter, error, completed);
+        }
+    }
+
+    private void scheduleIdleCheck(long delayMillis) {
+        idleWatchdog = Schedulers.parallel().schedule(this::checkIdle, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 空闲检查：未超时则按剩余时间重新登记，超时则回收连接
+     */
+    private void checkIdle() {
+        if (completed.get()) {
+            return;
+        }
+        long idleMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastActivityNanos);
+        if (idleMillis < idleTimeoutMillis) {
+            scheduleIdleCheck(idleTimeoutMillis - idleMillis);
+            return;
+        }
+        log.warn("【SSE WRITER】 连接 {}ms 无活动, 取消大模型流式输出并回收连接", idleMillis);
+        boolean startDrain;
+        synchronized (this) {
+            // 未发送的事件不再发送，直接以超时错误结束
+            buffer.clear();
+            pendingContent.setLength(0);
+            overflowContent.setLength(0);
+            closing = true;
+            closeError = new TimeoutException("SSE 连接 " + idleMillis + "ms 无活动");
+            startDrain = !draining;
+            draining = true;
+        }
+        disposeUpstream();
+        if (startDrain) {
+            startDrain();
+        }
+    }
+
+    /**
+     * 连接已由容器结束（客户端断开、超时或正常结束后的回调），丢弃未发送的事件并取消上游
+     */
+    private void cancel(String reason) {
+        boolean abandoned = !completed.getAndSet(true);
+        synchronized (this) {
+            buffer.clear();
+            pendingContent.setLength(0);
+            overflowContent.setLength(0);
+            closing = true;
+        }
+        if (abandoned) {
+            log.info("【SSE WRITER】 {}, 取消大模型流式输出和进行中的工具调用", reason);
+        }
+        Disposable watchdog = idleWatchdog;
+        if (watchdog != null) {
+            watchdog.dispose();
+        }
+        disposeUpstream();
+    }
+
+    /**
+     * 取消所有绑定的上游（大模型流式输出订阅和进行中的工具调用），之后绑定的会立即取消，已放入缓冲区的事件照常写出
+     */
+    public void cancelUpstream() {
+        disposeUpstream();
+    }
+
+    private void disposeUpstream() {
+        upstreams.dispose();
+    }
+}
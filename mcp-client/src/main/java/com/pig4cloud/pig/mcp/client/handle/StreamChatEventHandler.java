@@ -1,20 +1,25 @@
 package com.pig4cloud.pig.mcp.client.handle;
 
+import com.pig4cloud.pig.mcp.client.chat.CustomAsyncMcpToolCallback;
 import org.springframework.ai.chat.model.ChatResponse;
 import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.ai.model.tool.ToolCallingChatOptions;
-import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.publisher.Flux;
 
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.Map;
 import java.util.function.Consumer;
 
 public interface StreamChatEventHandler {
 
 
-    Consumer<ChatResponse> createChatResponseConsumer(SseEmitter emitter, String agentId,AtomicBoolean completed, Prompt[] prompt, ToolCallingChatOptions chatOptions, ChatResponse[] lastChatResponse);
+    Consumer<ChatResponse> createChatResponseConsumer(SseEventWriter writer, String agentId, Prompt[] prompt, ToolCallingChatOptions chatOptions, ChatResponse[] lastChatResponse, ToolLoopState loopState);
 
-    Consumer<? super Throwable> createChaterrorConsumer(SseEmitter emitter, AtomicBoolean completed);
+    Consumer<? super Throwable> createChaterrorConsumer(SseEventWriter writer);
 
-    Runnable createCompleteConsumerByFinishReasonStop(SseEmitter emitter, String agentId, AtomicBoolean completed, ChatResponse[] lastChatResponse);
+    Runnable createCompleteConsumer(SseEventWriter writer, String agentId, ChatResponse[] lastChatResponse, ToolLoopState loopState);
+
+    void armTimeBudget(SseEventWriter writer, String agentId, ToolLoopState loopState);
+
+    Flux<SseChatEvent> createReactiveChatFlux(String agentId, Prompt prompt, ToolCallingChatOptions chatOptions, Map<String, CustomAsyncMcpToolCallback> toolCallbackMap, ToolLoopState loopState);
 
 }
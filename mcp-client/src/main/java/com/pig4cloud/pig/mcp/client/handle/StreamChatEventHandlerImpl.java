@@ -1,32 +1,33 @@
 package com.pig4cloud.pig.mcp.client.handle;
 
-import cn.hutool.core.collection.CollectionUtil;
+import com.pig4cloud.pig.mcp.client.chat.CustomAsyncMcpToolCallback;
+import com.pig4cloud.pig.mcp.client.chat.ParallelToolCallExecutor;
 import com.pig4cloud.pig.mcp.client.enums.SseEventType;
-import com.pig4cloud.pig.mcp.client.utils.SseEmitterHelpUtils;
-import com.pig4cloud.pig.mcp.common.model.ChatResponseModel;
 import com.pig4cloud.pig.mcp.common.util.JsonUtil;
 import jakarta.annotation.Resource;
 import org.springframework.ai.chat.messages.AssistantMessage;
 import org.springframework.ai.chat.messages.Message;
-import org.springframework.ai.chat.messages.MessageType;
 import org.springframework.ai.chat.messages.ToolResponseMessage;
 import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.chat.model.ChatResponse;
 import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.ai.model.tool.ToolCallingChatOptions;
-import org.springframework.ai.model.tool.ToolCallingManager;
 import org.springframework.ai.model.tool.ToolExecutionResult;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
-import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
-import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
-import java.util.HashSet;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.function.Consumer;
 import lombok.extern.slf4j.Slf4j;
 
@@ -40,37 +41,46 @@ public class StreamChatEventHandlerImpl implements StreamChatEventHandler {
     private ChatModel chatModel; // 注入 ChatModel，用于与大模型进行交互
 
     @Autowired
-    private ToolCallingManager toolCallingManager; // 注入 ToolCallingManager，用于处理工具调用
+    private ParallelToolCallExecutor parallelToolCallExecutor; // 注入 ParallelToolCallExecutor，用于并发执行工具调用
 
     @Resource(name = "sseStreamConsumerThreadPool")
-    private ThreadPoolExecutor sseStreamConsumerThreadPool; // 注入线程池，用于异步执行任务
+    private ExecutorService sseStreamConsumerThreadPool; // 注入线程池，用于异步执行任务
 
 
     /**
      * 处理 chatResponse 的核心逻辑
      *
-     * @param emitter          SseEmitter 用于发送 SSE 事件
-     * @param completed        AtomicBoolean 用于标记是否已完成
+     * @param writer           SseEventWriter 用于发送 SSE 事件
      * @param prompt           prompt数组，必须是长度为1的数组，用于在异步任务中更新 Prompt 对象
      * @param chatOptions      大模型聊天选项
      * @param lastChatResponse lastChatResponse 数组，必须是长度为1的数组，用于在 lambda 中修改外部变量
+     * @param loopState        本次问答的工具调用循环状态，各轮共享
      * @return Consumer<ChatResponse> ChatResponse 处理器
      */
     @Override
-    public Consumer<ChatResponse> createChatResponseConsumer(SseEmitter emitter, String agentId, AtomicBoolean completed, Prompt[] prompt, ToolCallingChatOptions chatOptions, ChatResponse[] lastChatResponse) {
+    public Consumer<ChatResponse> createChatResponseConsumer(SseEventWriter writer, String agentId, Prompt[] prompt, ToolCallingChatOptions chatOptions, ChatResponse[] lastChatResponse, ToolLoopState loopState) {
         return chatResponse -> {
             // 存储最后一个 chatResponse，用于后续判断是否还有工具调用
             lastChatResponse[0] = chatResponse;
+            // 累计 token 用量和耗时，问答结束时发送
+            loopState.onChatResponse(chatResponse);
             // 判断 chatResponse 是否包含工具调用
             if (chatResponse.hasToolCalls()) {
-                // 异步执行工具调用 防止在flux流中发生block()
-                CompletableFuture.runAsync(() -> asyncTooCallThenAskLlm(emitter, agentId, completed, prompt, chatOptions, chatResponse), sseStreamConsumerThreadPool);
+                // 达到工具调用轮数或耗时上限时发送终止事件并结束问答
+                SseChatEvent limitEvent = loopState.nextRound();
+                if (limitEvent != null) {
+                    stopToolLoop(writer, agentId, limitEvent, loopState);
+                    return;
+                }
+                // 异步执行工具调用 防止在flux流中发生block()，绑定到连接以便客户端断开时中断
+                Future<?> toolCallTask = sseStreamConsumerThreadPool.submit(() -> asyncTooCallThenAskLlm(writer, agentId, prompt, chatOptions, chatResponse, loopState));
+                writer.bindUpstream(() -> toolCallTask.cancel(true));
             } else {
                 // 如果不包含工具调用，则发送助手内容
                 String content = chatResponse.getResult().getOutput().getText();
                 log.debug("【大模型流试输出】助手内容片段：{}", content);
                 if (StringUtils.hasText(content)) {
-                    SseEmitterHelpUtils.safeSend(emitter, SseEmitterHelpUtils.buildSseEvent(SseEventType.ASSISTANT, JsonUtil.encodeToString(new ChatResponseModel(content))), completed);
+                    writer.send(SseChatEvent.assistant(content));
                 }
             }
         };
@@ -79,127 +89,252 @@ public class StreamChatEventHandlerImpl implements StreamChatEventHandler {
     /**
      * 异步执行工具调用，然后向大模型提问
      *
-     * @param emitter      SseEmitter 用于发送 SSE 事件
-     * @param completed    AtomicBoolean 用于标记是否已完成
+     * @param writer       SseEventWriter 用于发送 SSE 事件
      * @param prompt       prompt数组，必须是长度为1的数组，用于在异步任务中更新 Prompt 对象
      * @param chatOptions  大模型聊天选项
      * @param chatResponse ChatResponse 对象
+     * @param loopState    本次问答的工具调用循环状态
      */
-    private void asyncTooCallThenAskLlm(SseEmitter emitter, String agentId, AtomicBoolean completed, Prompt[] prompt, ToolCallingChatOptions chatOptions, ChatResponse chatResponse) {
+    private void asyncTooCallThenAskLlm(SseEventWriter writer, String agentId, Prompt[] prompt, ToolCallingChatOptions chatOptions, ChatResponse chatResponse, ToolLoopState loopState) {
+        if (writer.isCompleted()) {
+            log.debug("【大模型流试输出】 智能体id:{} 连接已结束, 不再执行工具调用", agentId);
+            return;
+        }
         Prompt currentPrompt = prompt[0]; // 复制 prompt
         try {
             // TODO 待优化 大模型返回的 tool args json JsonParseException异常 导致无法进行工具调用 也无法将错误json输送给大模型让其整理
-            // 如果包含工具调用，则发送工具参数
-            sendToolArgs(emitter, chatResponse, completed);
+            // 并发执行工具调用，每个工具开始时发送工具参数，结束时发送工具结果
             // 调用工具失败 异常会自动追加到Message 大模型整理
-            ToolExecutionResult result = getToolExecutionResult(chatResponse, currentPrompt); // 获取工具执行结果
+            ToolExecutionResult result = getToolExecutionResult(chatResponse, currentPrompt, new ParallelToolCallExecutor.ToolCallListener() {
+                @Override
+                public void onToolStart(AssistantMessage.ToolCall toolCall) {
+                    writer.send(buildToolArgsEvent(toolCall)); // 发送工具参数
+                }
+
+                @Override
+                public void onToolResult(ToolResponseMessage.ToolResponse toolResponse) {
+                    writer.send(buildToolResultEvent(toolResponse)); // 发送工具结果
+                }
+            }); // 获取工具执行结果
             List<Message> newMessages = result.conversationHistory(); // 获取新的消息列表
-            sendToolResult(emitter, result, result.conversationHistory(), completed); // 发送工具结果
             currentPrompt = new Prompt(newMessages, chatOptions); // 创建新的 prompt
             // 用于存储最后一个 chatResponse
             final ChatResponse[] lastChatResponse = {chatResponse};
-            chatModel.stream(currentPrompt)
+            if (writer.isCompleted()) {
+                log.debug("【大模型流试输出】 智能体id:{} 连接已结束, 不再向大模型提问", agentId);
+                return;
+            }
+            // 工具执行耗时可能较长，再次提问前检查总耗时
+            SseChatEvent limitEvent = loopState.checkBudget();
+            if (limitEvent != null) {
+                stopToolLoop(writer, agentId, limitEvent, loopState);
+                return;
+            }
+            writer.bindUpstream(chatModel.stream(currentPrompt)
                     .subscribe(
-                            createChatResponseConsumer(emitter, agentId, completed, new Prompt[]{currentPrompt}, chatOptions, lastChatResponse),
-                            createChaterrorConsumer(emitter, completed),
-                            createCompleteConsumerByFinishReasonStop(emitter, agentId, completed, lastChatResponse));
+                            createChatResponseConsumer(writer, agentId, new Prompt[]{currentPrompt}, chatOptions, lastChatResponse, loopState),
+                            createChaterrorConsumer(writer),
+                            createCompleteConsumer(writer, agentId, lastChatResponse, loopState)));
+        } catch (CancellationException e) {
+            log.debug("【大模型流试输出】 智能体id:{} 连接已结束, 工具调用已取消", agentId);
         } catch (Exception e) {
             log.error("【大模型流试输出】调用工具执行失败", e);
-            SseEmitterHelpUtils.safeError(emitter, e, completed); // 发送错误信息
+            writer.error(e); // 发送错误信息
+        }
+    }
+
+    /**
+     * 达到工具调用轮数或耗时上限，发送终止事件后结束问答
+     *
+     * @param writer     SseEventWriter 用于发送 SSE 事件
+     * @param agentId    智能体 ID
+     * @param limitEvent 终止事件
+     * @param loopState  本次问答的工具调用循环状态
+     */
+    private void stopToolLoop(SseEventWriter writer, String agentId, SseChatEvent limitEvent, ToolLoopState loopState) {
+        if (!loopState.finish()) {
+            return;
+        }
+        log.warn("【大模型流试输出】 智能体id:{} 工具调用达到上限, 终止问答:{}", agentId, limitEvent.data());
+        writer.send(limitEvent);
+        writer.send(loopState.doneEvent());
+        writer.complete();
+    }
+
+    /**
+     * 登记问答总耗时的一次性定时器
+     * <p>
+     * 轮次边界的检查无法终止长时间的大模型输出或工具调用，定时器到期时直接发送终止事件和结束事件、结束连接，
+     * 再取消大模型流式输出和进行中的工具调用。先结束连接再取消，被中断的工具调用不会再以错误结束连接。
+     * 定时器绑定到连接，连接提前结束时一并取消。
+     *
+     * @param writer    SseEventWriter 用于发送 SSE 事件
+     * @param agentId   智能体 ID
+     * @param loopState 本次问答的工具调用循环状态
+     */
+    @Override
+    public void armTimeBudget(SseEventWriter writer, String agentId, ToolLoopState loopState) {
+        if (loopState.budgetMillis() <= 0) {
+            return;
         }
+        writer.bindUpstream(Schedulers.parallel().schedule(() -> {
+            SseChatEvent limitEvent = loopState.checkBudget();
+            if (limitEvent == null || writer.isCompleted()) {
+                return;
+            }
+            stopToolLoop(writer, agentId, limitEvent, loopState);
+            writer.cancelUpstream();
+        }, loopState.budgetMillis(), TimeUnit.MILLISECONDS));
     }
 
     /**
-     * 获取工具执行结果
+     * 获取工具执行结果，同一轮的多个工具调用并发执行
      *
      * @param chatResponse  ChatResponse 对象
      * @param currentPrompt 当前 Prompt 对象
+     * @param listener      工具开始和结束时的回调
      * @return ToolExecutionResult 工具执行结果
      */
-    private ToolExecutionResult getToolExecutionResult(ChatResponse chatResponse, Prompt currentPrompt) {
-        return toolCallingManager.executeToolCalls(currentPrompt, chatResponse);
+    private ToolExecutionResult getToolExecutionResult(ChatResponse chatResponse, Prompt currentPrompt, ParallelToolCallExecutor.ToolCallListener listener) {
+        return parallelToolCallExecutor.executeToolCalls(currentPrompt, chatResponse, listener);
     }
 
     /**
      * 创建 ChatError 处理器
      *
-     * @param emitter   SseEmitter 用于发送 SSE 事件
-     * @param completed AtomicBoolean 用于标记是否已完成
+     * @param writer SseEventWriter 用于发送 SSE 事件
      * @return Consumer<? super Throwable> 错误处理器
      */
     @Override
-    public Consumer<? super Throwable> createChaterrorConsumer(SseEmitter emitter, AtomicBoolean completed) {
+    public Consumer<? super Throwable> createChaterrorConsumer(SseEventWriter writer) {
         return error -> {
             log.error("【大模型流试输出】 消费大模型返回的流试片段异常", error);
-            SseEmitterHelpUtils.safeError(emitter, error, completed); // 发送错误信息
+            writer.error(error); // 发送错误信息
         };
     }
 
     /**
-     * 创建 Complete 处理器，用于处理 FinishReason 为 STOP 的情况
+     * 创建 Complete 处理器
+     * <p>
+     * 本轮流式输出触发了新一轮工具调用时由下一轮结束问答；否则无论结束原因是 STOP、LENGTH 还是其他厂商自定义的原因，
+     * 都发送 {@link com.pig4cloud.pig.mcp.client.enums.SseEventType#DONE} 事件并结束 SseEmitter，保证连接一定会关闭。
      *
-     * @param emitter          SseEmitter 用于发送 SSE 事件
-     * @param completed        AtomicBoolean 用于标记是否已完成
+     * @param writer           SseEventWriter 用于发送 SSE 事件
      * @param lastChatResponse lastChatResponse 数组，必须是长度为1的数组，用于在 lambda 中修改外部变量
+     * @param loopState        本次问答的工具调用循环状态
      * @return Runnable 完成处理器
      */
     @Override
-    public Runnable createCompleteConsumerByFinishReasonStop(SseEmitter emitter, String agentId, AtomicBoolean completed, ChatResponse[] lastChatResponse) {
+    public Runnable createCompleteConsumer(SseEventWriter writer, String agentId, ChatResponse[] lastChatResponse, ToolLoopState loopState) {
+        // 订阅本轮流式输出时已开始的工具调用轮数
+        int round = loopState.rounds();
         return () -> {
-            HashSet<String> finishReason = getLlmFinishReason();
-            // 判断是否是由于 STOP 结束
-            if (lastChatResponse != null && lastChatResponse[0] != null && lastChatResponse[0].hasFinishReasons(finishReason)) {
-                log.debug("【大模型流试输出】 智能体id:{} 问答结束 结束标志:{},SseEmitter关闭", agentId, lastChatResponse[0].getResult().getMetadata().getFinishReason());
-                SseEmitterHelpUtils.safeComplete(emitter, completed); // 完成 SseEmitter
+            if (loopState.rounds() > round || !loopState.finish()) {
+                return;
             }
+            log.debug("【大模型流试输出】 智能体id:{} 问答结束 结束标志:{},SseEmitter关闭", agentId, finishReason(lastChatResponse[0]));
+            writer.send(loopState.doneEvent());
+            writer.complete(); // 缓冲区中的事件写完后完成 SseEmitter
         };
     }
 
+    private String finishReason(ChatResponse chatResponse) {
+        if (chatResponse == null || chatResponse.getResult() == null || chatResponse.getResult().getMetadata() == null) {
+            return null;
+        }
+        return chatResponse.getResult().getMetadata().getFinishReason();
+    }
+
 
-    private HashSet<String> getLlmFinishReason() {
-        // 判断是否是由于 TOOL_CALLS 结束
-        HashSet<String> finishReason = new HashSet();
-        finishReason.add("STOP");
-        return finishReason;
+    /**
+     * 创建非阻塞的问答事件流
+     * <p>
+     * 大模型流式输出、工具调用以及工具调用后的再次提问全部以 {@link Flux}/{@link Mono} 组合：
+     * 1. 不包含工具调用的片段直接转换为 {@link SseEventType#ASSISTANT} 事件；
+     * 2. 包含工具调用的片段依次发送 {@link SseEventType#TOOL_ARGS} 事件、非阻塞执行工具、发送 {@link SseEventType#TOOL_RESULT} 事件，
+     * 再以追加了工具结果的对话历史递归创建下一轮事件流。
+     * 开始新一轮工具调用和再次提问前检查 {@link ToolLoopState}，达到上限时以 {@link SseEventType#TOOL_LOOP_LIMIT} 事件结束本轮，
+     * 不再递归，调用方在收到该事件后结束整个事件流。
+     * 整个过程不占用线程池线程，事件流结束即表示问答结束。
+     *
+     * @param agentId         智能体 ID
+     * @param prompt          当前轮次的 Prompt
+     * @param chatOptions     大模型聊天选项，需关闭框架内部的工具执行
+     * @param toolCallbackMap 工具名称到异步工具回调的映射
+     * @param loopState       本次问答的工具调用循环状态，各轮共享
+     * @return SSE 事件流
+     */
+    @Override
+    public Flux<SseChatEvent> createReactiveChatFlux(String agentId, Prompt prompt, ToolCallingChatOptions chatOptions, Map<String, CustomAsyncMcpToolCallback> toolCallbackMap, ToolLoopState loopState) {
+        return chatModel.stream(prompt).doOnNext(loopState::onChatResponse).concatMap(chatResponse -> {
+            if (!chatResponse.hasToolCalls()) {
+                String content = chatResponse.getResult().getOutput().getText();
+                log.debug("【大模型流试输出】助手内容片段：{}", content);
+                return StringUtils.hasText(content)
+                        ? Flux.just(SseChatEvent.assistant(content))
+                        : Flux.empty();
+            }
+            SseChatEvent limitEvent = loopState.nextRound();
+            if (limitEvent != null) {
+                log.warn("【大模型流试输出】 智能体id:{} 工具调用达到上限, 终止问答:{}", agentId, limitEvent.data());
+                return Flux.just(limitEvent);
+            }
+            AssistantMessage assistantMessage = chatResponse.getResult().getOutput();
+            List<AssistantMessage.ToolCall> toolCalls = assistantMessage.getToolCalls();
+            // 按大模型返回的顺序保存工具响应，所有工具结束后合并为一条工具响应消息
+            AtomicReferenceArray<ToolResponseMessage.ToolResponse> toolResponses = new AtomicReferenceArray<>(toolCalls.size());
+            // 所有工具同时订阅，每个工具开始时发送工具参数，结束时发送工具结果
+            Flux<SseChatEvent> toolEvents = Flux.range(0, toolCalls.size())
+                    .flatMap(index -> {
+                        AssistantMessage.ToolCall toolCall = toolCalls.get(index);
+                        return Flux.concat(
+                                Mono.fromSupplier(() -> buildToolArgsEvent(toolCall)),
+                                parallelToolCallExecutor.executeToolCallAsync(toolCall, toolCallbackMap.get(toolCall.name()))
+                                        .map(toolResponse -> {
+                                            toolResponses.set(index, toolResponse);
+                                            return buildToolResultEvent(toolResponse);
+                                        }));
+                    });
+            return Flux.concat(toolEvents, Flux.defer(() -> {
+                List<ToolResponseMessage.ToolResponse> responses = new ArrayList<>(toolCalls.size());
+                for (int i = 0; i < toolCalls.size(); i++) {
+                    responses.add(toolResponses.get(i));
+                }
+                // 工具执行耗时可能较长，再次提问前检查总耗时
+                SseChatEvent budgetEvent = loopState.checkBudget();
+                if (budgetEvent != null) {
+                    log.warn("【大模型流试输出】 智能体id:{} 工具调用达到上限, 终止问答:{}", agentId, budgetEvent.data());
+                    return Flux.just(budgetEvent);
+                }
+                List<Message> newMessages = parallelToolCallExecutor.buildConversationHistory(prompt, assistantMessage, new ToolResponseMessage(responses));
+                return createReactiveChatFlux(agentId, new Prompt(newMessages, chatOptions), chatOptions, toolCallbackMap, loopState);
+            }));
+        });
     }
 
     /**
-     * 发送工具参数
+     * 构建工具参数事件
      *
-     * @param emitter      SseEmitter 用于发送 SSE 事件
-     * @param chatResponse ChatResponse 对象
-     * @param completed    AtomicBoolean 用于标记是否已完成
+     * @param toolCall 工具调用
+     * @return 工具参数 SSE 事件
      */
-    private void sendToolArgs(SseEmitter emitter, ChatResponse chatResponse, AtomicBoolean completed) {
-        List<AssistantMessage.ToolCall> toolCalls = chatResponse.getResult().getOutput().getToolCalls(); // 获取工具调用列表
-        if (!CollectionUtils.isEmpty(toolCalls)) {
-            AssistantMessage.ToolCall toolCall = toolCalls.get(0); // 获取第一个工具调用
-            ToolRequest toolRequest = new ToolRequest(toolCall.name(), toolCall.arguments()); // 创建 ToolRequest 对象
-            log.debug("【大模型流试输出】命中工具详情: {}", JsonUtil.encodeToString(toolRequest));
-            SseEmitter.SseEventBuilder sseEventBuilder = SseEmitterHelpUtils.buildSseEvent(SseEventType.TOOL_ARGS, JsonUtil.encodeToString(toolRequest)); // 创建 SSE 事件
-            SseEmitterHelpUtils.safeSend(emitter, sseEventBuilder, completed); // 发送 SSE 事件
-        }
+    private SseChatEvent buildToolArgsEvent(AssistantMessage.ToolCall toolCall) {
+        ToolRequest toolRequest = new ToolRequest(toolCall.name(), toolCall.arguments()); // 创建 ToolRequest 对象
+        log.debug("【大模型流试输出】命中工具详情: {}", JsonUtil.encodeToString(toolRequest));
+        return new SseChatEvent(SseEventType.TOOL_ARGS, JsonUtil.encodeToString(toolRequest));
     }
 
     /**
-     * 发送工具结果
+     * 构建工具结果事件
+     * <p>
+     * 每个工具结束时单独发送，数据格式保持为响应数据列表，列表中只有当前工具的结果
      *
-     * @param emitter     SseEmitter 用于发送 SSE 事件
-     * @param result      ToolExecutionResult 工具执行结果
-     * @param newMessages 新的消息列表
-     * @param completed   AtomicBoolean 用于标记是否已完成
+     * @param toolResponse 工具响应
+     * @return 工具结果 SSE 事件
      */
-    private void sendToolResult(SseEmitter emitter, ToolExecutionResult result, List<Message> newMessages, AtomicBoolean completed) {
-        if (CollectionUtil.isNotEmpty(newMessages)) {
-            log.debug("【大模型流试输出】工具调用结果：{}", result);
-            Message message = newMessages.get(newMessages.size() - 1); // 获取最后一条消息
-            if (MessageType.TOOL.equals(message.getMessageType())) { // 判断消息类型是否为 TOOL
-                List<ToolResponseMessage.ToolResponse> responses = ((ToolResponseMessage) message).getResponses(); // 获取工具响应列表
-                List<String> allResponses = responses.stream().map(ToolResponseMessage.ToolResponse::responseData).toList(); // 提取所有响应数据
-                SseEmitter.SseEventBuilder sseEventBuilder = SseEmitterHelpUtils.buildSseEvent(SseEventType.TOOL_RESULT, JsonUtil.encodeToString(allResponses)); // 创建 SSE 事件
-                SseEmitterHelpUtils.safeSend(emitter, sseEventBuilder, completed); // 发送 SSE 事件
-            }
-        }
+    private SseChatEvent buildToolResultEvent(ToolResponseMessage.ToolResponse toolResponse) {
+        log.debug("【大模型流试输出】工具 {} 调用结果：{}", toolResponse.name(), toolResponse.responseData());
+        return new SseChatEvent(SseEventType.TOOL_RESULT, JsonUtil.encodeToString(List.of(toolResponse.responseData())));
     }
 
     /**
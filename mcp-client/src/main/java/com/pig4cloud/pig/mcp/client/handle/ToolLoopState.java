@@ -0,0 +1,191 @@
+package com.pig4cloud.pig.mcp.client.handle;
+
+import com.pig4cloud.pig.mcp.client.enums.SseEventType;
+import com.pig4cloud.pig.mcp.common.util.JsonUtil;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.util.StringUtils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单次流式问答的工具调用循环状态
+ * <p>
+ * 大模型返回工具调用后执行工具，再带着工具结果重新提问，如此循环直到大模型不再调用工具。
+ * 每次问答创建一个实例在各轮之间共享，记录已执行的工具调用轮数和问答开始时间：
+ * 开始新一轮工具调用前检查轮数上限和总耗时上限，再次向大模型提问前检查总耗时上限，
+ * 达到任一上限时返回 {@link SseEventType#TOOL_LOOP_LIMIT} 终止事件，由调用方发送后结束问答。
+ * <p>
+ * 轮次边界的检查之外，调用方按 {@link #budgetMillis()} 为每次问答登记一次性定时器，大模型长时间输出或工具长时间执行时
+ * 到期直接终止，不必等到下一轮。问答只会结束一次，由 {@link #finish()} 保证正常结束、达到上限和定时器到期之间只有一方发送结束事件。
+ * <p>
+ * 同时累计各轮大模型返回的 token 用量、最后的结束原因和首个助手内容的耗时，
+ * 问答正常结束或达到上限时作为 {@link SseEventType#DONE} 事件发送，作为流的最后一个事件。
+ */
+public class ToolLoopState {
+
+    public static final String REASON_MAX_ROUNDS = "max_rounds";
+
+    public static final String REASON_TIME_BUDGET = "time_budget";
+
+    private final int maxRounds;
+
+    private final long budgetMillis;
+
+    private final long startNanos = System.nanoTime();
+
+    //已开始的工具调用轮数
+    private final AtomicInteger rounds = new AtomicInteger();
+
+    //各轮累计的提示词 token 数
+    private final AtomicLong promptTokens = new AtomicLong();
+
+    //各轮累计的生成 token 数
+    private final AtomicLong completionTokens = new AtomicLong();
+
+    //首个助手内容片段到达时的耗时（毫秒） -1表示尚未到达
+    private final AtomicLong firstContentMillis = new AtomicLong(-1);
+
+    //最后一个片段的结束原因
+    private volatile String finishReason;
+
+    //问答是否已经结束
+    private final AtomicBoolean finished = new AtomicBoolean(false);
+
+    /**
+     * @param maxRounds    最多工具调用轮数，小于等于0表示不限制
+     * @param budgetMillis 问答总耗时上限（毫秒），小于等于0表示不限制
+     */
+    public ToolLoopState(int maxRounds, long budgetMillis) {
+        this.maxRounds = maxRounds;
+        this.budgetMillis = budgetMillis;
+    }
+
+    /**
+     * 开始新一轮工具调用
+     *
+     * @return 达到轮数或耗时上限时返回终止事件，可以继续时返回 null
+     */
+    public SseChatEvent nextRound() {
+        int round = rounds.incrementAndGet();
+        if (maxRounds > 0 && round > maxRounds) {
+            return limitEvent(REASON_MAX_ROUNDS, round - 1);
+        }
+        return checkBudget();
+    }
+
+    /**
+     * 检查问答总耗时
+     *
+     * @return 超过耗时上限时返回终止事件，否则返回 null
+     */
+    public SseChatEvent checkBudget() {
+        if (budgetMillis > 0 && elapsedMillis() >= budgetMillis) {
+            return limitEvent(REASON_TIME_BUDGET, rounds.get());
+        }
+        return null;
+    }
+
+    /**
+     * 记录大模型返回的流式片段：累计 token 用量，记录结束原因和首个助手内容的耗时
+     * <p>
+     * 流式输出的用量通常只在最后一个片段上报，这里把各片段上报的用量累加
+     *
+     * @param chatResponse 流式片段
+     */
+    public void onChatResponse(ChatResponse chatResponse) {
+        if (chatResponse.getMetadata() != null) {
+            Usage usage = chatResponse.getMetadata().getUsage();
+            if (usage != null) {
+                promptTokens.addAndGet(usage.getPromptTokens() == null ? 0 : usage.getPromptTokens());
+                completionTokens.addAndGet(usage.getCompletionTokens() == null ? 0 : usage.getCompletionTokens());
+            }
+        }
+        if (chatResponse.getResult() == null) {
+            return;
+        }
+        if (chatResponse.getResult().getMetadata() != null && StringUtils.hasText(chatResponse.getResult().getMetadata().getFinishReason())) {
+            finishReason = chatResponse.getResult().getMetadata().getFinishReason();
+        }
+        if (firstContentMillis.get() < 0 && chatResponse.getResult().getOutput() != null && StringUtils.hasText(chatResponse.getResult().getOutput().getText())) {
+            firstContentMillis.compareAndSet(-1, elapsedMillis());
+        }
+    }
+
+    /**
+     * 标记问答结束
+     *
+     * @return 第一次调用返回 {@code true}，调用方负责发送结束事件；之后返回 {@code false}
+     */
+    public boolean finish() {
+        return finished.compareAndSet(false, true);
+    }
+
+    /**
+     * 问答总耗时上限（毫秒），小于等于0表示不限制
+     */
+    public long budgetMillis() {
+        return budgetMillis;
+    }
+
+    /**
+     * 已开始的工具调用轮数
+     */
+    public int rounds() {
+        return rounds.get();
+    }
+
+    /**
+     * 构建问答结束事件
+     *
+     * @return {@link SseEventType#DONE} 事件
+     */
+    public SseChatEvent doneEvent() {
+        long prompt = promptTokens.get();
+        long completion = completionTokens.get();
+        long firstContent = firstContentMillis.get();
+        return new SseChatEvent(SseEventType.DONE, JsonUtil.encodeToString(new ChatDone(finishReason, rounds.get(), elapsedMillis(),
+                firstContent < 0 ? null : firstContent, prompt, completion, prompt + completion)));
+    }
+
+    /**
+     * 问答开始至今的耗时（毫秒）
+     */
+    public long elapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    private SseChatEvent limitEvent(String reason, int completedRounds) {
+        return new SseChatEvent(SseEventType.TOOL_LOOP_LIMIT, JsonUtil.encodeToString(new ToolLoopLimit(reason, completedRounds, maxRounds, budgetMillis, elapsedMillis())));
+    }
+
+    /**
+     * 终止事件数据
+     *
+     * @param reason        终止原因 max_rounds:达到工具调用轮数上限 time_budget:达到总耗时上限
+     * @param rounds        已执行的工具调用轮数
+     * @param maxRounds     工具调用轮数上限
+     * @param budgetMillis  总耗时上限（毫秒）
+     * @param elapsedMillis 问答已耗时（毫秒）
+     */
+    private record ToolLoopLimit(String reason, int rounds, int maxRounds, long budgetMillis, long elapsedMillis) {
+    }
+
+    /**
+     * 结束事件数据
+     *
+     * @param finishReason       最后一个片段的结束原因
+     * @param rounds             已执行的工具调用轮数
+     * @param elapsedMillis      问答总耗时（毫秒）
+     * @param firstContentMillis 首个助手内容片段的耗时（毫秒），没有助手内容时为 null
+     * @param promptTokens       提示词 token 数
+     * @param completionTokens   生成 token 数
+     * @param totalTokens        总 token 数
+     */
+    private record ChatDone(String finishReason, int rounds, long elapsedMillis, Long firstContentMillis,
+                            long promptTokens, long completionTokens, long totalTokens) {
+    }
+}
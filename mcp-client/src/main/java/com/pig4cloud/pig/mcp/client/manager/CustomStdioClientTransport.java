@@ -0,0 +1,35 @@
+package com.pig4cloud.pig.mcp.client.manager;
+
+import io.modelcontextprotocol.client.transport.ServerParameters;
+import io.modelcontextprotocol.client.transport.StdioClientTransport;
+
+/**
+ * 可定位子进程的 stdio 传输对象。
+ * <p>
+ * SDK 没有暴露 stdio 子进程的 {@link Process}，这里在启动子进程的环境变量中写入唯一标记
+ * {@value #PROCESS_MARKER_ENV}，之后通过 {@code /proc/<pid>/environ} 找到对应的子进程，用于统计资源占用。
+ */
+public class CustomStdioClientTransport extends StdioClientTransport {
+    /**
+     * 子进程标记使用的环境变量名。
+     */
+    public static final String PROCESS_MARKER_ENV = "MCP_CLIENT_PROCESS_MARKER";
+
+    private final String processMarker;
+
+    /**
+     * @param params        子进程启动参数
+     * @param processMarker 子进程唯一标记
+     */
+    public CustomStdioClientTransport(ServerParameters params, String processMarker) {
+        super(params);
+        this.processMarker = processMarker;
+    }
+
+    @Override
+    protected ProcessBuilder getProcessBuilder() {
+        ProcessBuilder processBuilder = super.getProcessBuilder();
+        processBuilder.environment().put(PROCESS_MARKER_ENV, processMarker);
+        return processBuilder;
+    }
+}
@@ -3,11 +3,17 @@ package com.pig4cloud.pig.mcp.client.manager;
 import com.pig4cloud.pig.mcp.client.manager.model.McpClientInfo;
 import com.pig4cloud.pig.mcp.common.params.ChatRequestParams;
 
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 public interface ManagerMcpAsyncClientService {
     void registryAndInitMcpAsyncClient(String agentId, String clientName, ChatRequestParams.McpConfig mcpConfig);
 
+    Mono<Void> registryAndInitMcpAsyncClients(String agentId, Map<String, ChatRequestParams.McpConfig> mcpConfigMap, Duration timeout);
+
     ConcurrentHashMap<String, McpClientInfo> getMcpClientMapByAgentId(String agentId);
 
     boolean startHealthCheck(String clientName, McpClientInfo mcpClientInfo,Integer timeoutSeconds);
@@ -3,19 +3,20 @@ package com.pig4cloud.pig.mcp.client.manager;
 import com.pig4cloud.pig.mcp.client.enums.McpClientType;
 import com.pig4cloud.pig.mcp.client.manager.model.McpClientInfo;
 import com.pig4cloud.pig.mcp.client.manager.task.McpCommonTask;
+import com.pig4cloud.pig.mcp.client.manager.task.McpHeartbeatScheduler;
 import com.pig4cloud.pig.mcp.common.params.ChatRequestParams;
 import com.pig4cloud.pig.mcp.common.properties.CommandExecProperties;
 import com.pig4cloud.pig.mcp.common.properties.CommandExecRequestProperties;
-import com.pig4cloud.pig.mcp.common.util.HttpSseUrlUtils;
 import io.modelcontextprotocol.client.McpAsyncClient;
 import io.modelcontextprotocol.client.McpClient;
-import io.modelcontextprotocol.client.transport.HttpClientSseClientTransport;
 import io.modelcontextprotocol.client.transport.ServerParameters;
 import io.modelcontextprotocol.client.transport.StdioClientTransport;
 import jakarta.annotation.Resource;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import java.time.Duration;
 import java.util.Date;
@@ -32,8 +33,15 @@ public class ManagerMcpAsyncClientServiceImpl implements ManagerMcpAsyncClientSe
     private CommandExecRequestProperties commandExecRequestProperties; // 注入 CommandExecRequestProperties，用于获取命令执行请求相关配置
     //异步mcp client 注册容器 <agentId,<clientName,McpClientInfo>>
     private final ConcurrentHashMap<String, ConcurrentHashMap<String, McpClientInfo>> mcpAsyncClientRegistryMap = new ConcurrentHashMap<>();
+    private static final String INIT_KEY_SEPARATOR = "::";
+    //正在初始化的异步mcp client <agentId::clientName,初始化结果> 用于合并同一客户端的并发初始化
+    private final ConcurrentHashMap<String, Mono<Void>> mcpAsyncClientInitMonoMap = new ConcurrentHashMap<>();
     @Resource(name = "mcpClientHeartbeatThreadPool")
-    private ThreadPoolExecutor mcpClientHeartbeatThreadPool; // 注入线程池，用于执行 MCP 客户端心跳检测任务
+    private ExecutorService mcpClientHeartbeatThreadPool; // 注入线程池，用于执行 MCP 客户端心跳检测任务
+    @Autowired
+    private McpHeartbeatScheduler mcpHeartbeatScheduler; // 注入 McpHeartbeatScheduler，用于登记客户端心跳
+    @Autowired
+    private McpSseTransportFactory mcpSseTransportFactory; // 注入 McpSseTransportFactory，用于创建共用 HttpClient 的 SSE 传输对象
 
     /**
      * 注册并初始化 MCP 客户端。
@@ -65,12 +73,14 @@ public class ManagerMcpAsyncClientServiceImpl implements ManagerMcpAsyncClientSe
                 McpClientInfo clientInfo = buildMcpAsyncClientClientStrategy(mcpConfig);
                 initMcpAsyncClient(agentId, clientName, clientInfo);
                 mcpClientMapByAgentId.put(clientName, clientInfo);
+                scheduleHeartbeat(agentId, clientName, clientInfo);
             } else if (!startHealthCheck(clientName, oldClient, McpCommonTask.MCP_PING_TIMEOUT_SECONDS)) {
                 log.warn("【MCP ASYNC CLIENT MANAGER】 发现旧的client {} 健康检查失败, 进行替换", clientName); // 添加warn日志
                 McpClientInfo clientInfo = buildMcpAsyncClientClientStrategy(mcpConfig);
                 initMcpAsyncClient(agentId, clientName, clientInfo);
                 mcpClientMapByAgentId.remove(clientName);
                 mcpClientMapByAgentId.put(clientName, clientInfo);
+                scheduleHeartbeat(agentId, clientName, clientInfo);
             }
         } else {
             McpClientInfo clientInfo = buildMcpAsyncClientClientStrategy(mcpConfig);
@@ -78,9 +88,122 @@ public class ManagerMcpAsyncClientServiceImpl implements ManagerMcpAsyncClientSe
             mcpClientMapByAgentId = new ConcurrentHashMap<>();
             mcpClientMapByAgentId.put(clientName, clientInfo);
             mcpAsyncClientRegistryMap.put(agentId, mcpClientMapByAgentId);
+            scheduleHeartbeat(agentId, clientName, clientInfo);
+        }
+    }
+
+
+    /**
+     * 以非阻塞方式批量注册并初始化同一智能体的多个 MCP 异步客户端。
+     * <p>
+     * 所有客户端同时订阅，不占用线程池线程等待：
+     * 1. 已注册的客户端发起 ping，健康则刷新访问时间；
+     * 2. 不存在或不健康的客户端构建新客户端并 initialize，成功后放入注册表并异步关闭被替换的旧客户端；
+     * 3. 单个客户端失败或超时只记录日志，不影响其他客户端。
+     * 同一 agentId/clientName 的并发初始化通过 {@link #mcpAsyncClientInitMonoMap} 共享同一个初始化结果。
+     *
+     * @param agentId      Agent 的唯一标识符。
+     * @param mcpConfigMap 客户端名称到 MCP 配置的映射。
+     * @param timeout      单个客户端 ping + 初始化的最大等待时间。
+     * @return 所有客户端处理完成时结束的 {@link Mono}。
+     */
+    @Override
+    public Mono<Void> registryAndInitMcpAsyncClients(String agentId, Map<String, ChatRequestParams.McpConfig> mcpConfigMap, Duration timeout) {
+        return Flux.fromIterable(mcpConfigMap.entrySet())
+                .flatMap(entry -> registryAndInitMcpAsyncClientReactive(agentId, entry.getKey(), entry.getValue())
+                        .timeout(timeout)
+                        .onErrorResume(e -> {
+                            log.error("【MCP ASYNC CLIENT MANAGER】 客户端注册失败或超时, 智能体id:{}, 客户端名称:{}", agentId, entry.getKey(), e);
+                            return Mono.empty();
+                        }))
+                .then();
+    }
+
+    private Mono<Void> registryAndInitMcpAsyncClientReactive(String agentId, String clientName, ChatRequestParams.McpConfig mcpConfig) {
+        ConcurrentHashMap<String, McpClientInfo> mcpClientMapByAgentId = mcpAsyncClientRegistryMap.get(agentId);
+        McpClientInfo oldClient = mcpClientMapByAgentId == null ? null : mcpClientMapByAgentId.get(clientName);
+        if (oldClient == null) {
+            return initMcpAsyncClientShared(agentId, clientName, mcpConfig, null);
         }
+        return oldClient.getMcpAsyncClient().ping()
+                .timeout(Duration.ofSeconds(McpCommonTask.MCP_PING_TIMEOUT_SECONDS))
+                .map(pingResult -> true)
+                .onErrorReturn(false)
+                .flatMap(healthy -> {
+                    if (healthy) {
+                        oldClient.access();
+                        return Mono.empty();
+                    }
+                    log.warn("【MCP ASYNC CLIENT MANAGER】 发现旧的client {} 健康检查失败, 进行替换", clientName);
+                    return initMcpAsyncClientShared(agentId, clientName, mcpConfig, oldClient);
+                });
+    }
+
+    /**
+     * 初始化异步客户端，同一 agentId/clientName 的并发初始化共享同一个结果。
+     */
+    private Mono<Void> initMcpAsyncClientShared(String agentId, String clientName, ChatRequestParams.McpConfig mcpConfig, McpClientInfo oldClient) {
+        String initKey = agentId + INIT_KEY_SEPARATOR + clientName;
+        return mcpAsyncClientInitMonoMap.computeIfAbsent(initKey, key -> Mono.defer(() -> {
+                    // 订阅时再次检查：旧客户端可能已被其他请求替换
+                    McpClientInfo current = getMcpClientInfo(agentId, clientName);
+                    if (current != null && current != oldClient) {
+                        return Mono.<Void>empty();
+                    }
+                    McpClientInfo clientInfo = buildMcpAsyncClientClientStrategy(mcpConfig);
+                    log.debug("【MCP ASYNC CLIENT MANAGER】 开始初始化客户端, 智能体id:{}, 客户端名称:{}", agentId, clientName);
+                    return clientInfo.getMcpAsyncClient().initialize()
+                            .timeout(Duration.ofSeconds(McpCommonTask.MCP_CLIENT_INIT_SECONDS))
+                            .doOnSuccess(initializeResult -> {
+                                log.debug("【MCP ASYNC CLIENT MANAGER】 客户端初始化成功, 智能体id:{}, 客户端名称:{}", agentId, clientName);
+                                clientInfo.access();
+                                McpClientInfo replaced = mcpAsyncClientRegistryMap.computeIfAbsent(agentId, id -> new ConcurrentHashMap<>()).put(clientName, clientInfo);
+                                scheduleHeartbeat(agentId, clientName, clientInfo);
+                                if (replaced != null) {
+                                    closeMcpAsyncClientGracefully(agentId, clientName, replaced.getMcpAsyncClient());
+                                }
+                            })
+                            .doOnError(e -> closeMcpAsyncClientGracefully(agentId, clientName, clientInfo.getMcpAsyncClient()))
+                            .then();
+                })
+                .doFinally(signal -> mcpAsyncClientInitMonoMap.remove(key))
+                .cache());
     }
 
+    /**
+     * 登记客户端心跳，客户端被替换或移除后心跳自动停止。
+     *
+     * @param agentId    智能体 ID
+     * @param clientName 客户端名称
+     * @param clientInfo 已放入注册表的客户端
+     */
+    private void scheduleHeartbeat(String agentId, String clientName, McpClientInfo clientInfo) {
+        mcpHeartbeatScheduler.schedule(clientInfo,
+                registeredClientInfo -> getMcpClientInfo(agentId, clientName) == registeredClientInfo,
+                expiredClientInfo -> {
+                    ConcurrentHashMap<String, McpClientInfo> mcpClientMapByAgentId = mcpAsyncClientRegistryMap.get(agentId);
+                    if (mcpClientMapByAgentId != null && mcpClientMapByAgentId.remove(clientName, expiredClientInfo)) {
+                        closeMcpAsyncClientGracefully(agentId, clientName, expiredClientInfo.getMcpAsyncClient());
+                    }
+                });
+    }
+
+    private McpClientInfo getMcpClientInfo(String agentId, String clientName) {
+        ConcurrentHashMap<String, McpClientInfo> mcpClientMapByAgentId = mcpAsyncClientRegistryMap.get(agentId);
+        return mcpClientMapByAgentId == null ? null : mcpClientMapByAgentId.get(clientName);
+    }
+
+    /**
+     * 异步关闭 MCP 异步客户端，不阻塞调用线程
+     *
+     * @param agentId        智能体 ID
+     * @param clientName     客户端名称
+     * @param mcpAsyncClient MCP 异步客户端
+     */
+    private void closeMcpAsyncClientGracefully(String agentId, String clientName, McpAsyncClient mcpAsyncClient) {
+        mcpAsyncClient.closeGracefully()
+                .subscribe(null, e -> log.error("【MCP ASYNC CLIENT MANAGER】 客户端关闭连接出错 智能体id:{},客户端名称:{}", agentId, clientName, e));
+    }
 
     /**
      * 根据 Agent ID 获取对应的 MCP 客户端映射表。
@@ -244,7 +367,10 @@ public class ManagerMcpAsyncClientServiceImpl implements ManagerMcpAsyncClientSe
      */
     public McpClientInfo buildMcpAsyncClientClientStrategy(ChatRequestParams.McpConfig mcpConfig) {
         // 如果 mcpConfig 包含有效的 url，则构建基于 Http Sse 的客户端
-        return StringUtils.hasText(mcpConfig.url()) ? buildHttpAsyncClientSseClient(mcpConfig) : buildStdioAsyncClient(mcpConfig);
+        McpClientInfo clientInfo = StringUtils.hasText(mcpConfig.url()) ? buildHttpAsyncClientSseClient(mcpConfig) : buildStdioAsyncClient(mcpConfig);
+        // 设置最大空闲时间，供心跳任务回收空闲客户端
+        clientInfo.setIdleTimeoutMillis(McpCommonTask.MCP_MAX_IDLE_MILLISECOND);
+        return clientInfo;
     }
 
     /**
@@ -254,10 +380,8 @@ public class ManagerMcpAsyncClientServiceImpl implements ManagerMcpAsyncClientSe
      * @return 包含 MCP 异步客户端信息的 McpClientInfo 对象
      */
     private McpClientInfo buildHttpAsyncClientSseClient(ChatRequestParams.McpConfig mcpConfig) {
-        // 分割 URL
-        Map<String, String> urlResult = HttpSseUrlUtils.splitUrl(mcpConfig.url());
-        // 构建 HTTP 客户端传输对象
-        HttpClientSseClientTransport transport = HttpClientSseClientTransport.builder(urlResult.get(HttpSseUrlUtils.DEFAULT_BASE_URL_NAME)).sseEndpoint(urlResult.get(HttpSseUrlUtils.DEFAULT_ENDPOINT_NAME)).build();
+        // 构建 HTTP 客户端传输对象，共用同一个 HttpClient
+        SharedHttpClientSseClientTransport transport = mcpSseTransportFactory.create(mcpConfig.url());
         // 构建 MCP 异步客户端
         McpAsyncClient asyncClient = McpClient.async(transport).requestTimeout(Duration.ofSeconds(commandExecRequestProperties.getTimeout())).build();
         return new McpClientInfo(McpClientType.SSE, mcpConfig.url(), asyncClient, mcpConfig.defaultFlag(), new Date());
@@ -5,11 +5,15 @@ package com.pig4cloud.pig.mcp.client.manager;
 import com.pig4cloud.pig.mcp.client.manager.model.McpClientInfo;
 import com.pig4cloud.pig.mcp.common.params.ChatRequestParams;
 
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 public interface ManagerMcpSyncClientService {
     void registryAndInitMcpSyncClient(String agentId, String clientName, ChatRequestParams.McpConfig mcpConfig);
 
+    void registryAndInitMcpSyncClients(String agentId, Map<String, ChatRequestParams.McpConfig> mcpConfigMap, long timeoutSeconds);
+
     ConcurrentHashMap<String, McpClientInfo> getMcpClientMapByAgentId(String agentId);
 
     ConcurrentHashMap<String, ConcurrentHashMap<String, McpClientInfo>> allMcpClientMap();
@@ -20,4 +24,10 @@ public interface ManagerMcpSyncClientService {
 
     void removeMcpClientByAgentId(String agentId);
 
+    void warmUpStdioClients(List<ChatRequestParams.McpConfig> mcpConfigs);
+
+    List<McpClientInfo> allPooledMcpClients();
+
+    void evictMcpClient(McpClientInfo mcpClientInfo);
+
 }
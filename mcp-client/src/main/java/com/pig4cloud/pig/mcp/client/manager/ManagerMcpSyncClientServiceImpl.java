@@ -1,17 +1,20 @@
 package com.pig4cloud.pig.mcp.client.manager;
 
+import cn.hutool.crypto.digest.DigestUtil;
+import com.pig4cloud.pig.mcp.client.chat.McpToolResultCache;
 import com.pig4cloud.pig.mcp.client.enums.McpClientType;
 import com.pig4cloud.pig.mcp.client.manager.model.McpClientInfo;
 import com.pig4cloud.pig.mcp.client.manager.task.McpCommonTask;
+import com.pig4cloud.pig.mcp.client.manager.task.McpHeartbeatScheduler;
 import com.pig4cloud.pig.mcp.common.params.ChatRequestParams;
 import com.pig4cloud.pig.mcp.common.properties.CommandExecProperties;
 import com.pig4cloud.pig.mcp.common.properties.CommandExecRequestProperties;
-import com.pig4cloud.pig.mcp.common.util.HttpSseUrlUtils;
+import com.pig4cloud.pig.mcp.common.properties.McpClientProperties;
 import io.modelcontextprotocol.client.McpClient;
 import io.modelcontextprotocol.client.McpSyncClient;
-import io.modelcontextprotocol.client.transport.HttpClientSseClientTransport;
 import io.modelcontextprotocol.client.transport.ServerParameters;
 import io.modelcontextprotocol.client.transport.StdioClientTransport;
+import io.modelcontextprotocol.spec.McpClientTransport;
 import jakarta.annotation.Resource;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -19,9 +22,19 @@ import org.springframework.util.StringUtils;
 
 import java.time.Duration;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
@@ -33,28 +46,40 @@ public class ManagerMcpSyncClientServiceImpl implements ManagerMcpSyncClientServ
     private CommandExecRequestProperties commandExecRequestProperties;
     //同步mcp client 注册容器 <agentId,<clientName,McpClientInfo>>
     private final ConcurrentHashMap<String, ConcurrentHashMap<String, McpClientInfo>> mcpSyncClientRegistryMap = new ConcurrentHashMap<>();
-    @Resource(name = "mcpClientHeartbeatThreadPool")
-    private ThreadPoolExecutor mcpClientHeartbeatThreadPool;
+    //共享mcp client 连接池 <poolKey,McpClientInfo> 配置相同的智能体共用同一个客户端，按引用计数释放
+    private final ConcurrentHashMap<String, McpClientInfo> mcpSyncClientPoolMap = new ConcurrentHashMap<>();
+    //正在初始化的mcp client <poolKey,初始化结果> 用于合并同一配置的并发初始化
+    private final ConcurrentHashMap<String, CompletableFuture<McpClientInfo>> mcpSyncClientInitFutureMap = new ConcurrentHashMap<>();
+    @Autowired
+    private McpStdioWarmPool mcpStdioWarmPool;
+
+    @Autowired
+    private McpToolResultCache mcpToolResultCache;
+
+    @Autowired
+    private McpHeartbeatScheduler mcpHeartbeatScheduler;
+
+    @Autowired
+    private McpClientProperties mcpClientProperties;
+    @Autowired
+    private McpSseTransportFactory mcpSseTransportFactory;
+    @Resource(name = "mcpClientReleaseThreadPool")
+    private ExecutorService mcpClientReleaseThreadPool;
 
     @Resource(name = "mcpClientInitThreadPool")
-    private ThreadPoolExecutor mcpClientInitThreadPool;
+    private ExecutorService mcpClientInitThreadPool;
+
+    @Resource(name = "mcpClientPingThreadPool")
+    private ExecutorService mcpClientPingThreadPool;
 
     /**
      * 注册并初始化 MCP 客户端。
      * <p>
      * 该方法负责将 MCP 客户端注册到注册表中，并进行初始化。
      * 具体步骤包括：
-     * 1. 尝试获取指定 Agent ID 的客户端映射表。
-     * 2. 如果映射表存在：
-     * a. 检查是否已存在具有相同客户端名称的客户端。
-     * b. 如果不存在，则初始化客户端并将其添加到映射表中。
-     * c. 如果已存在，则检查现有客户端的健康状况。
-     * d. 如果现有客户端不健康，则初始化新客户端，移除旧客户端，并将新客户端添加到映射表中。
-     * 3. 如果映射表不存在：
-     * a. 初始化客户端。
-     * b. 创建新的客户端映射表。
-     * c. 将客户端添加到映射表中。
-     * d. 将映射表添加到主注册表中。
+     * 1. 如果已存在具有相同客户端名称的客户端，则检查其健康状况，健康时仅刷新访问时间。
+     * 2. 如果不存在或现有客户端不健康，则优先复用共享连接池中配置相同的客户端，没有时才初始化新客户端。
+     * 3. 同一配置的并发初始化会合并为一次，后到的请求等待并共享进行中的初始化结果。
      *
      * @param agentId    Agent 的唯一标识符。
      * @param clientName 客户端的名称，用于在映射表中标识客户端。
@@ -62,40 +87,387 @@ public class ManagerMcpSyncClientServiceImpl implements ManagerMcpSyncClientServ
      */
     @Override
     public void registryAndInitMcpSyncClient(String agentId, String clientName, ChatRequestParams.McpConfig mcpConfig) {
+        registryAndInitMcpSyncClients(agentId, Map.of(clientName, mcpConfig), McpCommonTask.MCP_CLIENT_INIT_SECONDS);
+    }
+
+
+    /**
+     * 批量注册并初始化同一智能体的多个 MCP 客户端。
+     * <p>
+     * 与逐个注册不同，该方法并发执行，整批共享一个截止时间：
+     * 1. 已注册的客户端并发发起 ping，健康的客户端仅刷新访问时间，不健康的客户端从共享连接池中移除；
+     * 2. 不存在或不健康的客户端先按配置 key 查找共享连接池，命中则直接引用；
+     * 3. 未命中的客户端统一构建后并发提交到 {@code mcpClientInitThreadPool} 初始化，
+     * 在截止时间内初始化成功的客户端放入共享连接池并被当前智能体引用，超时或失败的客户端被取消并关闭。
+     * <p>
+     * 初始化通过 {@link #mcpSyncClientInitFutureMap} 实现 single-flight：同一配置同一时刻只有一个请求
+     * 真正构建并初始化客户端，其余请求（无论来自哪个智能体）在截止时间内等待其结果，避免重复启动 stdio 进程。
+     *
+     * @param agentId        Agent 的唯一标识符。
+     * @param mcpConfigMap   客户端名称到 MCP 配置的映射。
+     * @param timeoutSeconds 整批注册的最大等待时间（单位秒）。
+     */
+    @Override
+    public void registryAndInitMcpSyncClients(String agentId, Map<String, ChatRequestParams.McpConfig> mcpConfigMap, long timeoutSeconds) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds);
         ConcurrentHashMap<String, McpClientInfo> mcpClientMapByAgentId = mcpSyncClientRegistryMap.get(agentId);
-        if (mcpClientMapByAgentId != null) {
-            McpClientInfo oldClientInfo = mcpClientMapByAgentId.get(clientName);
+        // 1. 已存在的客户端并发进行健康检查
+        Map<String, McpClientInfo> oldClientInfos = new LinkedHashMap<>();
+        Map<String, Future<Object>> pingFutures = new LinkedHashMap<>();
+        Map<String, ChatRequestParams.McpConfig> initConfigs = new LinkedHashMap<>();
+        mcpConfigMap.forEach((clientName, mcpConfig) -> {
+            McpClientInfo oldClientInfo = mcpClientMapByAgentId == null ? null : mcpClientMapByAgentId.get(clientName);
             if (oldClientInfo == null) {
-                McpClientInfo mcpClientInfo = buildMcpClientInfo(mcpConfig);
-                if (mcpClientInfo.initMcpSyncClient(agentId, clientName, mcpClientInfo, McpCommonTask.MCP_CLIENT_INIT_SECONDS)) {
-                    mcpClientMapByAgentId.put(clientName, mcpClientInfo);
+                initConfigs.put(clientName, mcpConfig);
+            } else {
+                oldClientInfos.put(clientName, oldClientInfo);
+                pingFutures.put(clientName, oldClientInfo.submitPing());
+            }
+        });
+        pingFutures.forEach((clientName, future) -> {
+            long pingTimeoutNanos = Math.min(TimeUnit.SECONDS.toNanos(McpCommonTask.MCP_PING_TIMEOUT_SECONDS), deadline - System.nanoTime());
+            McpClientInfo oldClientInfo = oldClientInfos.get(clientName);
+            if (awaitFuture(agentId, clientName, future, pingTimeoutNanos, true)) {
+                oldClientInfo.access();
+            } else {
+                log.warn("【MCP SYNC CLIENT MANAGER】 发现旧的client {} 健康检查失败, 进行替换", clientName);
+                // 不健康的客户端不再分配给新的智能体，现有引用在各自替换或移除时释放
+                mcpSyncClientPoolMap.remove(oldClientInfo.getPoolKey(), oldClientInfo);
+                initConfigs.put(clientName, mcpConfigMap.get(clientName));
+            }
+        });
+        if (initConfigs.isEmpty()) {
+            return;
+        }
+        // 2. 优先复用共享连接池中的客户端，未命中时初始化，已有进行中初始化的配置只等待其结果
+        Map<String, McpClientInfo> initClientInfos = new LinkedHashMap<>();
+        Map<String, Future<?>> initFutures = new LinkedHashMap<>();
+        Map<String, CompletableFuture<McpClientInfo>> initResults = new LinkedHashMap<>();
+        Map<String, CompletableFuture<McpClientInfo>> inFlightResults = new LinkedHashMap<>();
+        initConfigs.forEach((clientName, mcpConfig) -> {
+            String poolKey = buildPoolKey(mcpConfig);
+            if (attachPooledMcpClient(agentId, clientName, poolKey)) {
+                return;
+            }
+            CompletableFuture<McpClientInfo> initResult = new CompletableFuture<>();
+            CompletableFuture<McpClientInfo> inFlightResult = mcpSyncClientInitFutureMap.putIfAbsent(poolKey, initResult);
+            if (inFlightResult != null) {
+                log.debug("【MCP SYNC CLIENT MANAGER】 客户端正在初始化, 等待其结果, 智能体id:{}, 客户端名称:{}", agentId, clientName);
+                inFlightResults.put(clientName, inFlightResult);
+                return;
+            }
+            // 获得初始化权后再次检查：其他请求可能刚刚完成同一配置的初始化
+            if (attachPooledMcpClient(agentId, clientName, poolKey)) {
+                completeInit(poolKey, initResult, mcpSyncClientPoolMap.get(poolKey));
+                return;
+            }
+            // stdio 客户端优先使用预热池中已初始化的客户端
+            McpClientInfo warmClientInfo = StringUtils.hasText(mcpConfig.url()) ? null : mcpStdioWarmPool.take(poolKey, () -> buildPooledMcpClientInfo(mcpConfig, poolKey));
+            if (warmClientInfo != null) {
+                poolMcpClient(warmClientInfo);
+                attachMcpClient(agentId, clientName, warmClientInfo);
+                completeInit(poolKey, initResult, warmClientInfo);
+                return;
+            }
+            McpClientInfo mcpClientInfo = buildPooledMcpClientInfo(mcpConfig, poolKey);
+            log.debug("【MCP SYNC CLIENT MANAGER】 开始初始化客户端, 智能体id:{}, 客户端名称:{}", agentId, clientName);
+            initClientInfos.put(clientName, mcpClientInfo);
+            initResults.put(clientName, initResult);
+            initFutures.put(clientName, mcpClientInfo.submitInitMcpSyncClient());
+        });
+        // 3. 在整批的截止时间内等待初始化结果
+        initFutures.forEach((clientName, future) -> {
+            McpClientInfo mcpClientInfo = initClientInfos.get(clientName);
+            McpClientInfo pooledClientInfo = null;
+            try {
+                if (awaitFuture(agentId, clientName, future, deadline - System.nanoTime(), true)) {
+                    log.debug("【MCP SYNC CLIENT MANAGER】 客户端初始化成功, 智能体id:{}, 客户端名称:{}", agentId, clientName);
+                    poolMcpClient(mcpClientInfo);
+                    attachMcpClient(agentId, clientName, mcpClientInfo);
+                    pooledClientInfo = mcpClientInfo;
                 } else {
                     mcpClientInfo.closeMcpSyncClient(agentId, clientName, mcpClientInfo.getMcpSyncClient());
                 }
-            } else if (!oldClientInfo.startHealthCheck(clientName, oldClientInfo, McpCommonTask.MCP_PING_TIMEOUT_SECONDS)) {
-                log.warn("【MCP SYNC CLIENT MANAGER】 发现旧的client {} 健康检查失败, 进行替换", clientName); // 添加warn日志
-                McpClientInfo mcpClientInfo = buildMcpClientInfo(mcpConfig);
-                if (mcpClientInfo.initMcpSyncClient(agentId, clientName, mcpClientInfo, McpCommonTask.MCP_CLIENT_INIT_SECONDS)) {
-                    mcpClientMapByAgentId.remove(clientName);
-                    mcpClientMapByAgentId.put(clientName, mcpClientInfo);
-                } else {
-                    mcpClientInfo.closeMcpSyncClient(agentId, clientName, mcpClientInfo.getMcpSyncClient());
+            } finally {
+                completeInit(mcpClientInfo.getPoolKey(), initResults.get(clientName), pooledClientInfo);
+            }
+        });
+        inFlightResults.forEach((clientName, future) -> {
+            if (awaitFuture(agentId, clientName, future, deadline - System.nanoTime(), false)) {
+                McpClientInfo mcpClientInfo = future.getNow(null);
+                if (mcpClientInfo != null && !attachMcpClient(agentId, clientName, mcpClientInfo)) {
+                    log.warn("【MCP SYNC CLIENT MANAGER】 共享客户端已被释放, 智能体id:{}, 客户端名称:{}", agentId, clientName);
                 }
-            } else {
-                oldClientInfo.access();
             }
-        } else {
-            McpClientInfo mcpClientInfo = buildMcpClientInfo(mcpConfig);
-            if (mcpClientInfo.initMcpSyncClient(agentId, clientName, mcpClientInfo, McpCommonTask.MCP_CLIENT_INIT_SECONDS)) {
-                mcpClientMapByAgentId = new ConcurrentHashMap<>();
-                mcpClientMapByAgentId.put(clientName, mcpClientInfo);
-                mcpSyncClientRegistryMap.put(agentId, mcpClientMapByAgentId);
-            } else {
-                mcpClientInfo.closeMcpSyncClient(agentId, clientName, mcpClientInfo.getMcpSyncClient());
+        });
+    }
+
+    /**
+     * 尝试从共享连接池中引用配置相同的客户端。
+     *
+     * @param agentId    Agent 的唯一标识符。
+     * @param clientName 客户端名称。
+     * @param poolKey    共享连接池的 key。
+     * @return 引用成功返回 {@code true}，连接池中不存在或客户端已被释放返回 {@code false}。
+     */
+    private boolean attachPooledMcpClient(String agentId, String clientName, String poolKey) {
+        McpClientInfo pooledClientInfo = mcpSyncClientPoolMap.get(poolKey);
+        if (pooledClientInfo == null || !attachMcpClient(agentId, clientName, pooledClientInfo)) {
+            return false;
+        }
+        log.debug("【MCP SYNC CLIENT MANAGER】 复用共享客户端, 智能体id:{}, 客户端名称:{}, 引用数:{}", agentId, clientName, pooledClientInfo.getRefCount().get());
+        pooledClientInfo.access();
+        return true;
+    }
+
+    /**
+     * 把初始化完成的客户端放入共享连接池，并登记心跳。
+     *
+     * @param mcpClientInfo 初始化完成的客户端。
+     */
+    private void poolMcpClient(McpClientInfo mcpClientInfo) {
+        mcpSyncClientPoolMap.put(mcpClientInfo.getPoolKey(), mcpClientInfo);
+        mcpHeartbeatScheduler.schedule(mcpClientInfo,
+                clientInfo -> mcpSyncClientPoolMap.get(clientInfo.getPoolKey()) == clientInfo,
+                this::evictMcpClient);
+        evictOverweightMcpClients(mcpClientInfo);
+    }
+
+    /**
+     * 共享连接池的总权重超过 {@code registryMaxWeight} 时，按最近最少访问淘汰其他客户端，直到总权重回到上限以内。
+     * <p>
+     * stdio 客户端对应一个子进程，权重按 {@code stdioClientWeight} 计算，SSE 客户端按 {@code sseClientWeight} 计算，
+     * 因此上限主要约束的是子进程数量。刚放入的客户端不会被淘汰。
+     * <p>
+     * 空闲时间不足 {@code registryMinIdle} 的客户端视为正在使用，不会被淘汰，此时允许总权重暂时超过上限，
+     * 等这些客户端空闲后在下一次放入客户端时再淘汰。
+     *
+     * @param newClientInfo 刚放入共享连接池的客户端。
+     */
+    private void evictOverweightMcpClients(McpClientInfo newClientInfo) {
+        long maxWeight = mcpClientProperties.getRegistryMaxWeight();
+        if (maxWeight <= 0) {
+            return;
+        }
+        long totalWeight = mcpSyncClientPoolMap.values().stream().mapToLong(this::clientWeight).sum();
+        if (totalWeight <= maxWeight) {
+            return;
+        }
+        // 先取访问时间快照再排序，避免排序过程中访问时间变化
+        long minIdleMillis = mcpClientProperties.getRegistryMinIdle();
+        List<Map.Entry<McpClientInfo, Long>> candidates = mcpSyncClientPoolMap.values().stream()
+                .filter(clientInfo -> clientInfo != newClientInfo)
+                .map(clientInfo -> Map.entry(clientInfo, clientInfo.getIdleMillis()))
+                .filter(candidate -> candidate.getValue() >= minIdleMillis)
+                .sorted(Map.Entry.<McpClientInfo, Long>comparingByValue().reversed())
+                .toList();
+        for (Map.Entry<McpClientInfo, Long> candidate : candidates) {
+            if (totalWeight <= maxWeight) {
+                break;
+            }
+            McpClientInfo clientInfo = candidate.getKey();
+            if (mcpSyncClientPoolMap.remove(clientInfo.getPoolKey(), clientInfo)) {
+                log.info("【MCP SYNC CLIENT MANAGER】 共享连接池总权重 {} 超过上限 {}, 淘汰客户端 {}, 空闲 {} ms", totalWeight, maxWeight, clientInfo.getClientName(), candidate.getValue());
+                totalWeight -= clientWeight(clientInfo);
+                evictMcpClient(clientInfo);
+            }
+        }
+        if (totalWeight > maxWeight) {
+            log.warn("【MCP SYNC CLIENT MANAGER】 共享连接池总权重 {} 超过上限 {}, 其余客户端均在使用中, 暂不淘汰", totalWeight, maxWeight);
+        }
+    }
+
+    /**
+     * 智能体持有的客户端数量超过 {@code registryMaxClientsPerAgent} 时，淘汰该智能体最近最少访问的其他客户端。
+     * <p>
+     * 只释放该智能体的引用，其他智能体共用的客户端不受影响。
+     *
+     * @param agentId               智能体 ID。
+     * @param keepClientName        刚注册的客户端名称，不会被淘汰。
+     * @param mcpClientMapByAgentId 智能体的客户端映射表。
+     */
+    private void evictOverflowAgentMcpClients(String agentId, String keepClientName, ConcurrentHashMap<String, McpClientInfo> mcpClientMapByAgentId) {
+        int maxClients = mcpClientProperties.getRegistryMaxClientsPerAgent();
+        if (maxClients <= 0 || mcpClientMapByAgentId.size() <= maxClients) {
+            return;
+        }
+        List<Map.Entry<String, Long>> candidates = mcpClientMapByAgentId.entrySet().stream()
+                .filter(entry -> !entry.getKey().equals(keepClientName))
+                .map(entry -> Map.entry(entry.getKey(), entry.getValue().getIdleMillis()))
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .toList();
+        for (Map.Entry<String, Long> candidate : candidates) {
+            if (mcpClientMapByAgentId.size() <= maxClients) {
+                break;
+            }
+            String clientName = candidate.getKey();
+            McpClientInfo clientInfo = mcpClientMapByAgentId.get(clientName);
+            if (clientInfo != null && mcpClientMapByAgentId.remove(clientName, clientInfo)) {
+                log.info("【MCP SYNC CLIENT MANAGER】 智能体 {} 持有的客户端数量超过上限 {}, 淘汰客户端 {}", agentId, maxClients, clientName);
+                mcpClientReleaseThreadPool.execute(() -> releaseMcpClient(agentId, clientName, clientInfo));
             }
         }
     }
 
+    private long clientWeight(McpClientInfo mcpClientInfo) {
+        return mcpClientInfo.getClientType() == McpClientType.STDIO ? mcpClientProperties.getStdioClientWeight() : mcpClientProperties.getSseClientWeight();
+    }
+
+    /**
+     * 淘汰共享客户端（心跳失败、空闲超时或超过容量）：从共享连接池移除，并从所有引用它的智能体中移除。
+     * <p>
+     * 只有移除的是同一个客户端实例时才释放引用，期间被替换成新客户端的条目不受影响。
+     * 释放和关闭在 {@code mcpClientReleaseThreadPool} 中异步执行，stdio 子进程退出较慢时不阻塞调用方（心跳时间轮或注册请求）。
+     *
+     * @param mcpClientInfo 要淘汰的客户端。
+     */
+    @Override
+    public void evictMcpClient(McpClientInfo mcpClientInfo) {
+        mcpSyncClientPoolMap.remove(mcpClientInfo.getPoolKey(), mcpClientInfo);
+        // 按客户端自身登记的持有者释放，不遍历所有智能体
+        for (McpClientInfo.Holder holder : mcpClientInfo.holders()) {
+            String agentId = holder.agentId();
+            String clientName = holder.clientName();
+            ConcurrentHashMap<String, McpClientInfo> mcpClientMapByAgentId = mcpSyncClientRegistryMap.get(agentId);
+            if (mcpClientMapByAgentId != null && mcpClientMapByAgentId.remove(clientName, mcpClientInfo)) {
+                log.info("【MCP SYNC CLIENT MANAGER】 淘汰客户端, 智能体id:{}, 客户端名称:{}", agentId, clientName);
+                mcpClientReleaseThreadPool.execute(() -> releaseMcpClient(agentId, clientName, mcpClientInfo));
+            }
+        }
+    }
+
+    /**
+     * 让智能体引用指定的客户端，替换掉的旧客户端会释放一次引用。
+     *
+     * @param agentId       Agent 的唯一标识符。
+     * @param clientName    客户端名称。
+     * @param mcpClientInfo 要引用的客户端。
+     * @return 引用成功返回 {@code true}，客户端已被释放返回 {@code false}。
+     */
+    private boolean attachMcpClient(String agentId, String clientName, McpClientInfo mcpClientInfo) {
+        if (!mcpClientInfo.retain()) {
+            return false;
+        }
+        // 先登记持有者再放入映射表，淘汰时总能找到该引用
+        mcpClientInfo.addHolder(agentId, clientName);
+        ConcurrentHashMap<String, McpClientInfo> mcpClientMapByAgentId = mcpSyncClientRegistryMap.computeIfAbsent(agentId, key -> new ConcurrentHashMap<>());
+        McpClientInfo oldClientInfo = mcpClientMapByAgentId.put(clientName, mcpClientInfo);
+        if (oldClientInfo == mcpClientInfo) {
+            // 重复引用同一个共享客户端，只归还多出的引用计数，持有者保持登记
+            mcpClientInfo.release();
+        } else if (oldClientInfo != null) {
+            releaseMcpClient(agentId, clientName, oldClientInfo);
+        }
+        evictOverflowAgentMcpClients(agentId, clientName, mcpClientMapByAgentId);
+        return true;
+    }
+
+    /**
+     * 释放智能体对客户端的一次引用，最后一个引用释放时从共享连接池移除并关闭客户端。
+     *
+     * @param agentId       智能体 ID (用于日志记录)。
+     * @param clientName    客户端名称。
+     * @param mcpClientInfo 要释放的客户端。
+     */
+    private void releaseMcpClient(String agentId, String clientName, McpClientInfo mcpClientInfo) {
+        mcpClientInfo.removeHolder(agentId, clientName);
+        if (mcpClientInfo.release()) {
+            mcpSyncClientPoolMap.remove(mcpClientInfo.getPoolKey(), mcpClientInfo);
+            mcpClientInfo.closeMcpSyncClient(agentId, clientName, mcpClientInfo.getMcpSyncClient());
+        }
+    }
+
+    /**
+     * 在剩余时间内等待任务完成。
+     *
+     * @param agentId         Agent 的唯一标识符 (用于日志记录)。
+     * @param clientName      客户端的名称 (用于日志记录)。
+     * @param future          待等待的任务。
+     * @param timeoutNanos    剩余的等待时间（纳秒）。
+     * @param cancelOnTimeout 超时或中断时是否取消任务，等待其他请求共享的初始化结果时不能取消。
+     * @return 任务在剩余时间内成功完成返回 {@code true}，否则返回 {@code false}。
+     */
+    private boolean awaitFuture(String agentId, String clientName, Future<?> future, long timeoutNanos, boolean cancelOnTimeout) {
+        try {
+            future.get(Math.max(timeoutNanos, 0L), TimeUnit.NANOSECONDS);
+            return true;
+        } catch (TimeoutException e) {
+            if (cancelOnTimeout) {
+                future.cancel(true); // 超时后尝试取消任务
+            }
+            log.error("【MCP SYNC CLIENT MANAGER】 批量注册等待超时, 智能体id:{}, 客户端名称:{}", agentId, clientName);
+            return false;
+        } catch (InterruptedException e) {
+            if (cancelOnTimeout) {
+                future.cancel(true); // 中断后尝试取消任务
+            }
+            Thread.currentThread().interrupt(); // 恢复线程的中断状态
+            log.error("【MCP SYNC CLIENT MANAGER】 批量注册被中断, 智能体id:{}, 客户端名称:{}", agentId, clientName, e);
+            return false;
+        } catch (ExecutionException e) {
+            log.error("【MCP SYNC CLIENT MANAGER】 批量注册执行异常, 智能体id:{}, 客户端名称:{}", agentId, clientName, e.getCause() != null ? e.getCause() : e);
+            return false;
+        }
+    }
+
+    /**
+     * 发布初始化结果并移除进行中的初始化标记。
+     *
+     * @param poolKey       共享连接池的 key。
+     * @param initResult    初始化结果。
+     * @param mcpClientInfo 初始化成功的客户端，失败时为 {@code null}。
+     */
+    private void completeInit(String poolKey, CompletableFuture<McpClientInfo> initResult, McpClientInfo mcpClientInfo) {
+        initResult.complete(mcpClientInfo);
+        mcpSyncClientInitFutureMap.remove(poolKey, initResult);
+    }
+
+    /**
+     * 预热 stdio 客户端。
+     * <p>
+     * 为配置中的每个 stdio 服务在后台准备好已初始化的客户端，注册时直接取用，预热池未开启时不做任何处理。
+     *
+     * @param mcpConfigs MCP 配置列表
+     */
+    @Override
+    public void warmUpStdioClients(List<ChatRequestParams.McpConfig> mcpConfigs) {
+        mcpConfigs.stream()
+                .filter(mcpConfig -> !StringUtils.hasText(mcpConfig.url()))
+                .forEach(mcpConfig -> {
+                    String poolKey = buildPoolKey(mcpConfig);
+                    mcpStdioWarmPool.warmUp(poolKey, () -> buildPooledMcpClientInfo(mcpConfig, poolKey));
+                });
+    }
+
+    private McpClientInfo buildPooledMcpClientInfo(ChatRequestParams.McpConfig mcpConfig, String poolKey) {
+        McpClientInfo mcpClientInfo = buildMcpClientInfo(mcpConfig);
+        mcpClientInfo.setPoolKey(poolKey);
+        mcpClientInfo.setMcpToolResultCache(mcpToolResultCache);
+        mcpClientInfo.setToolSchemaMaxChars(mcpClientProperties.getToolSchemaMaxChars());
+        return mcpClientInfo;
+    }
+
+    /**
+     * 根据 MCP 配置计算共享连接池的 key。
+     * <p>
+     * SSE 客户端按 url 区分；stdio 客户端按实际启动的命令、参数和环境变量区分，环境变量按 key 排序后参与计算，
+     * 与配置中的名称、描述等无关，因此不同智能体只要连接的是同一个服务就会共用同一个客户端。
+     * 工具结果缓存有效期不参与计算，缓存策略不同的智能体仍共用同一客户端，有效期在获取工具回调时按智能体的配置设置。
+     *
+     * @param mcpConfig MCP 配置
+     * @return 归一化配置的 SHA-256 摘要
+     */
+    private String buildPoolKey(ChatRequestParams.McpConfig mcpConfig) {
+        String normalized;
+        if (StringUtils.hasText(mcpConfig.url())) {
+            normalized = McpClientType.SSE.name() + "|" + mcpConfig.url().trim();
+        } else {
+            Map<String, String> env = mcpConfig.env() == null ? Map.of() : new TreeMap<>(mcpConfig.env());
+            List<String> args = mcpConfig.args() == null ? List.of() : mcpConfig.args();
+            normalized = McpClientType.STDIO.name() + "|" + resolveCommandPath() + "|" + String.join("\u0000", args) + "|" + env;
+        }
+        return DigestUtil.sha256Hex(normalized);
+    }
 
     /**
      * 根据 Agent ID 获取对应的 MCP 客户端映射表。
@@ -129,6 +501,16 @@ public class ManagerMcpSyncClientServiceImpl implements ManagerMcpSyncClientServ
     }
 
 
+    /**
+     * 获取共享连接池中的所有客户端。
+     *
+     * @return 共享连接池中客户端的快照
+     */
+    @Override
+    public List<McpClientInfo> allPooledMcpClients() {
+        return List.copyOf(mcpSyncClientPoolMap.values());
+    }
+
     /**
      * 根据客户端名称移除 MCP 客户端
      *
@@ -141,12 +523,12 @@ public class ManagerMcpSyncClientServiceImpl implements ManagerMcpSyncClientServ
         ConcurrentHashMap<String, McpClientInfo> mcpClientMapByAgentId = mcpSyncClientRegistryMap.get(agentId);
         // 判断客户端 Map 是否存在，并且客户端是否存在
         if (mcpClientMapByAgentId != null && mcpClientMapByAgentId.get(clientName) != null) {
-            // 获取 MCP 同步客户端
-            McpClientInfo mcpClientInfo = mcpClientMapByAgentId.get(clientName);
-            // 关闭 MCP 同步客户端
-            mcpClientInfo.closeMcpSyncClient(agentId, clientName, mcpClientInfo.getMcpSyncClient());
             // 移除客户端
-            mcpClientMapByAgentId.remove(clientName);
+            McpClientInfo mcpClientInfo = mcpClientMapByAgentId.remove(clientName);
+            // 释放引用，最后一个引用释放时关闭 MCP 同步客户端
+            if (mcpClientInfo != null) {
+                releaseMcpClient(agentId, clientName, mcpClientInfo);
+            }
         }
     }
 
@@ -161,9 +543,9 @@ public class ManagerMcpSyncClientServiceImpl implements ManagerMcpSyncClientServ
         ConcurrentHashMap<String, McpClientInfo> mcpClientMapByAgentId = mcpSyncClientRegistryMap.get(agentId);
         // 判断客户端 Map 是否存在，并且不为空
         if (mcpClientMapByAgentId != null && !mcpClientMapByAgentId.isEmpty()) {
-            // 遍历客户端 Map，关闭所有客户端
+            // 遍历客户端 Map，释放所有客户端的引用
             mcpClientMapByAgentId.forEach((clientName, mcpClientInfo) -> {
-                mcpClientInfo.closeMcpSyncClient(agentId, clientName, mcpClientInfo.getMcpSyncClient());
+                releaseMcpClient(agentId, clientName, mcpClientInfo);
             });
             // 清空客户端 Map
             mcpClientMapByAgentId.clear();
@@ -204,13 +586,10 @@ public class ManagerMcpSyncClientServiceImpl implements ManagerMcpSyncClientServ
      * @return 包含 MCP 同步客户端信息的 McpClientInfo 对象
      */
     public McpClientInfo buildHttpSyncClientSseClient(ChatRequestParams.McpConfig mcpConfig) {
-        // 分割 URL
-        Map<String, String> urlResult = HttpSseUrlUtils.splitUrl(mcpConfig.url());
-        // 构建 HTTP 客户端传输对象
-        HttpClientSseClientTransport transport = HttpClientSseClientTransport.builder(urlResult.get(HttpSseUrlUtils.DEFAULT_BASE_URL_NAME)).sseEndpoint(urlResult.get(HttpSseUrlUtils.DEFAULT_ENDPOINT_NAME)).build();
+        // 构建 HTTP 客户端传输对象，共用同一个 HttpClient
+        SharedHttpClientSseClientTransport transport = mcpSseTransportFactory.create(mcpConfig.url());
         // 构建 MCP 同步客户端
-        McpSyncClient syncClient = McpClient.sync(transport).requestTimeout(Duration.ofSeconds(commandExecRequestProperties.getTimeout())).build();
-        return new McpClientInfo(McpClientType.SSE, mcpConfig.url(), syncClient, mcpConfig.defaultFlag(), new Date(), McpCommonTask.MCP_MAX_IDLE_MILLISECOND, mcpClientInitThreadPool, mcpClientHeartbeatThreadPool);
+        return buildMcpSyncClientInfo(McpClientType.SSE, mcpConfig.url(), transport, mcpConfig);
     }
 
     /**
@@ -220,14 +599,52 @@ public class ManagerMcpSyncClientServiceImpl implements ManagerMcpSyncClientServ
      * @return 包含 MCP 同步客户端信息的 McpClientInfo 对象
      */
     private McpClientInfo buildStdioSyncClient(ChatRequestParams.McpConfig mcpConfig) {
-        // 获取命令路径
-        String commandPath = System.getProperty("os.name").toLowerCase().contains("win") ? commandExecProperties.getWinNode() : commandExecProperties.getNode();
         // 构建 ServerParameters 对象
-        ServerParameters serverParameters = ServerParameters.builder(commandPath).args(mcpConfig.args()).env(mcpConfig.env()).build();
-        // 构建 Stdio 客户端传输对象
-        StdioClientTransport transport = new StdioClientTransport(serverParameters);
+        ServerParameters serverParameters = ServerParameters.builder(resolveCommandPath()).args(mcpConfig.args()).env(mcpConfig.env()).build();
+        // 构建 Stdio 客户端传输对象，子进程带有唯一标记，用于统计资源占用
+        String processMarker = UUID.randomUUID().toString();
+        StdioClientTransport transport = new CustomStdioClientTransport(serverParameters, processMarker);
         // 构建 MCP 同步客户端
-        McpSyncClient syncClient = McpClient.sync(transport).requestTimeout(Duration.ofSeconds(commandExecRequestProperties.getTimeout())).build();
-        return new McpClientInfo(McpClientType.STDIO, mcpConfig.name(), syncClient, mcpConfig.defaultFlag(), new Date(), McpCommonTask.MCP_MAX_IDLE_MILLISECOND, mcpClientInitThreadPool, mcpClientHeartbeatThreadPool);
+        McpClientInfo mcpClientInfo = buildMcpSyncClientInfo(McpClientType.STDIO, mcpConfig.name(), transport, mcpConfig);
+        mcpClientInfo.setProcessMarker(processMarker);
+        return mcpClientInfo;
+    }
+
+    /**
+     * 获取 stdio 客户端的命令路径
+     *
+     * @return 当前操作系统对应的 node 命令路径
+     */
+    private String resolveCommandPath() {
+        return System.getProperty("os.name").toLowerCase().contains("win") ? commandExecProperties.getWinNode() : commandExecProperties.getNode();
+    }
+
+    /**
+     * 基于传输对象构建 MCP 同步客户端，并注册工具变更监听。
+     * <p>
+     * 服务端发送 {@code notifications/tools/list_changed} 时，SDK 会重新拉取工具列表并回调
+     * {@code toolsChangeConsumer}，此处直接用新的工具列表刷新 McpClientInfo 中的工具缓存。
+     *
+     * @param clientType 客户端类型
+     * @param clientName 客户端名称
+     * @param transport  传输对象
+     * @param mcpConfig  MCP 配置
+     * @return 包含 MCP 同步客户端信息的 McpClientInfo 对象
+     */
+    private McpClientInfo buildMcpSyncClientInfo(McpClientType clientType, String clientName, McpClientTransport transport, ChatRequestParams.McpConfig mcpConfig) {
+        AtomicReference<McpClientInfo> mcpClientInfoRef = new AtomicReference<>();
+        McpSyncClient syncClient = McpClient.sync(transport)
+                .requestTimeout(Duration.ofSeconds(commandExecRequestProperties.getTimeout()))
+                .toolsChangeConsumer(tools -> {
+                    McpClientInfo mcpClientInfo = mcpClientInfoRef.get();
+                    if (mcpClientInfo != null) {
+                        log.info("【MCP SYNC CLIENT MANAGER】 客户端 {} 工具列表发生变化, 刷新工具缓存", clientName);
+                        mcpClientInfo.refreshToolCallbacks(tools);
+                    }
+                })
+                .build();
+        McpClientInfo mcpClientInfo = new McpClientInfo(clientType, clientName, syncClient, mcpConfig.defaultFlag(), new Date(), McpCommonTask.MCP_MAX_IDLE_MILLISECOND, mcpClientInitThreadPool, mcpClientPingThreadPool);
+        mcpClientInfoRef.set(mcpClientInfo);
+        return mcpClientInfo;
     }
 }
@@ -0,0 +1,100 @@
+package com.pig4cloud.pig.mcp.client.manager;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pig4cloud.pig.mcp.common.properties.McpClientProperties;
+import com.pig4cloud.pig.mcp.common.util.HttpSseUrlUtils;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * SSE 类型 MCP 客户端传输对象工厂
+ * <p>
+ * 所有 SSE 传输对象共用一个 {@link HttpClient}：一个选择器线程、一个连接池和共享的回调线程池，
+ * 注册再多的 SSE 客户端也不会再为每个客户端创建线程。HTTPS 服务通过 ALPN 协商使用 HTTP/2，
+ * 同一服务的多个客户端复用一条连接；明文 HTTP 服务固定使用 HTTP/1.1，避免 h2c 升级请求与 SSE 长连接不兼容。
+ * <p>
+ * 工厂记录所有未关闭的传输对象，应用关闭时逐个关闭，取消 SSE 响应体订阅以断开长连接。
+ */
+@Slf4j
+@Component
+public class McpSseTransportFactory {
+    @Autowired
+    private McpClientProperties mcpClientProperties;
+
+    @Resource(name = "mcpSseHttpClientThreadPool")
+    private ExecutorService mcpSseHttpClientThreadPool;
+
+    //ObjectMapper 线程安全 所有传输对象共用
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    //所有 SSE 传输对象共用的 HttpClient
+    private HttpClient httpClient;
+
+    //未关闭的传输对象 传输对象关闭时自行移除
+    private final Set<SharedHttpClientSseClientTransport> openTransports = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    public void init() {
+        HttpClient.Version version = mcpClientProperties.getSseHttp2Enabled() ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1;
+        httpClient = HttpClient.newBuilder()
+                .version(version)
+                .connectTimeout(Duration.ofMillis(mcpClientProperties.getSseConnectTimeout()))
+                .executor(mcpSseHttpClientThreadPool)
+                .build();
+        log.info("【MCP SSE】 共享 HttpClient 初始化完成 协议:{} 连接超时:{}ms", version, mcpClientProperties.getSseConnectTimeout());
+    }
+
+    /**
+     * 关闭所有未关闭的传输对象，断开 SSE 长连接。
+     * <p>
+     * Java 17 的 HttpClient 没有关闭方法，长连接只能由各传输对象取消响应体订阅来断开；
+     * 连接断开后选择器线程在 HttpClient 不再被引用时退出，回调线程池随容器关闭。
+     */
+    @PreDestroy
+    public void destroy() {
+        List<SharedHttpClientSseClientTransport> transports = List.copyOf(openTransports);
+        for (SharedHttpClientSseClientTransport transport : transports) {
+            try {
+                transport.closeGracefully().block();
+            } catch (Exception e) {
+                log.warn("【MCP SSE】 关闭 SSE 传输对象失败", e);
+            }
+        }
+        log.info("【MCP SSE】 已关闭 {} 个 SSE 传输对象", transports.size());
+    }
+
+    /**
+     * 创建 SSE 传输对象
+     *
+     * @param url MCP 服务完整地址
+     * @return 使用共享 HttpClient 的传输对象
+     */
+    public SharedHttpClientSseClientTransport create(String url) {
+        // 分割 URL
+        Map<String, String> urlResult = HttpSseUrlUtils.splitUrl(url);
+        String baseUri = urlResult.get(HttpSseUrlUtils.DEFAULT_BASE_URL_NAME);
+        // 请求模板，传输对象每次请求复制后使用
+        HttpRequest.Builder requestBuilder = HttpRequest.newBuilder();
+        if (baseUri.regionMatches(true, 0, "http:", 0, 5)) {
+            requestBuilder.version(HttpClient.Version.HTTP_1_1);
+        }
+        SharedHttpClientSseClientTransport transport = new SharedHttpClientSseClientTransport(httpClient, requestBuilder, baseUri,
+                urlResult.get(HttpSseUrlUtils.DEFAULT_ENDPOINT_NAME), objectMapper,
+                Duration.ofMillis(mcpClientProperties.getSseConnectTimeout()), openTransports::remove);
+        openTransports.add(transport);
+        return transport;
+    }
+}
@@ -0,0 +1,175 @@
+package com.pig4cloud.pig.mcp.client.manager;
+
+import com.pig4cloud.pig.mcp.client.enums.McpClientType;
+import com.pig4cloud.pig.mcp.client.manager.model.McpClientInfo;
+import com.pig4cloud.pig.mcp.common.properties.McpClientProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * stdio 子进程资源监控。
+ * <p>
+ * 定期通过 {@code /proc} 采样每个 stdio 客户端子进程（含 npx 启动的 node 等后代进程）的常驻内存和 CPU 使用率，
+ * 结果记录在 {@link McpClientInfo} 中，可通过 {@code /chat/mpc/info} 查看。
+ * <p>
+ * 宿主机内存使用率超过 {@code memoryPressureThreshold} 时，按常驻内存从大到小淘汰空闲时间超过
+ * {@code memoryPressureMinIdle} 的 stdio 客户端，直到预计释放的内存使使用率回到阈值以下，
+ * 赶在 OOM killer 选中 JVM 之前释放子进程占用的内存。非 Linux 环境没有 {@code /proc}，监控不生效。
+ */
+@Slf4j
+@Component
+public class McpStdioProcessMonitor {
+    private static final Path PROC = Path.of("/proc");
+
+    @Autowired
+    private ManagerMcpSyncClientService managerMcpSyncClientService;
+
+    @Autowired
+    private McpClientProperties mcpClientProperties;
+
+    /**
+     * 采样所有 stdio 子进程，并在内存压力过大时淘汰空闲客户端。
+     */
+    @Scheduled(fixedDelayString = "${mcp.client.stdio-process-sample-interval:10000}")
+    public void sampleAndEvict() {
+        if (!Files.isDirectory(PROC)) {
+            return;
+        }
+        List<McpClientInfo> stdioClients = managerMcpSyncClientService.allPooledMcpClients().stream()
+                .filter(clientInfo -> clientInfo.getClientType() == McpClientType.STDIO && clientInfo.getProcessMarker() != null && clientInfo.isValid())
+                .toList();
+        stdioClients.forEach(this::sample);
+        evictUnderMemoryPressure(stdioClients);
+    }
+
+    private void sample(McpClientInfo clientInfo) {
+        ProcessHandle process = resolveProcess(clientInfo);
+        if (process == null) {
+            return;
+        }
+        long rssBytes = 0L;
+        long cpuNanos = 0L;
+        List<ProcessHandle> processTree = Stream.concat(Stream.of(process), process.descendants()).toList();
+        for (ProcessHandle handle : processTree) {
+            rssBytes += readRssBytes(handle.pid());
+            cpuNanos += handle.info().totalCpuDuration().map(Duration::toNanos).orElse(0L);
+        }
+        long now = System.nanoTime();
+        long lastSampleNanos = clientInfo.getProcessSampleNanos();
+        if (lastSampleNanos > 0 && now > lastSampleNanos) {
+            // 后代进程退出后其 CPU 时间不再计入，差值可能为负
+            long cpuDelta = Math.max(cpuNanos - clientInfo.getProcessCpuNanos(), 0L);
+            clientInfo.setProcessCpuPercent(cpuDelta * 100D / (now - lastSampleNanos));
+        }
+        clientInfo.setProcessRssBytes(rssBytes);
+        clientInfo.setProcessCpuNanos(cpuNanos);
+        clientInfo.setProcessSampleNanos(now);
+        log.debug("【MCP STDIO PROCESS】 客户端 {} pid:{} 进程数:{} rss:{}KB cpu:{}%", clientInfo.getClientName(), process.pid(), processTree.size(), rssBytes / 1024, String.format("%.1f", clientInfo.getProcessCpuPercent()));
+    }
+
+    /**
+     * 定位客户端的 stdio 子进程：已解析过 PID 时直接使用，否则在 JVM 的直接子进程中按环境变量标记查找。
+     */
+    private ProcessHandle resolveProcess(McpClientInfo clientInfo) {
+        Long processId = clientInfo.getProcessId();
+        if (processId != null) {
+            return ProcessHandle.of(processId).filter(ProcessHandle::isAlive).orElse(null);
+        }
+        String marker = CustomStdioClientTransport.PROCESS_MARKER_ENV + "=" + clientInfo.getProcessMarker();
+        ProcessHandle process = ProcessHandle.current().children()
+                .filter(child -> hasEnvironment(child.pid(), marker))
+                .findFirst()
+                .orElse(null);
+        if (process != null) {
+            clientInfo.setProcessId(process.pid());
+        }
+        return process;
+    }
+
+    private boolean hasEnvironment(long pid, String marker) {
+        try {
+            String environ = new String(Files.readAllBytes(PROC.resolve(pid + "/environ")), StandardCharsets.UTF_8);
+            for (String entry : environ.split("\0")) {
+                if (entry.equals(marker)) {
+                    return true;
+                }
+            }
+        } catch (IOException e) {
+            // 进程已退出或无权限读取
+        }
+        return false;
+    }
+
+    private long readRssBytes(long pid) {
+        try {
+            for (String line : Files.readAllLines(PROC.resolve(pid + "/status"), StandardCharsets.UTF_8)) {
+                if (line.startsWith("VmRSS:")) {
+                    return parseKb(line) * 1024L;
+                }
+            }
+        } catch (IOException e) {
+            // 进程已退出
+        }
+        return 0L;
+    }
+
+    private void evictUnderMemoryPressure(List<McpClientInfo> stdioClients) {
+        long totalKb = 0L;
+        long availableKb = 0L;
+        try {
+            for (String line : Files.readAllLines(PROC.resolve("meminfo"), StandardCharsets.UTF_8)) {
+                if (line.startsWith("MemTotal:")) {
+                    totalKb = parseKb(line);
+                } else if (line.startsWith("MemAvailable:")) {
+                    availableKb = parseKb(line);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("【MCP STDIO PROCESS】 读取 /proc/meminfo 失败", e);
+            return;
+        }
+        if (totalKb <= 0) {
+            return;
+        }
+        double threshold = mcpClientProperties.getMemoryPressureThreshold();
+        double usedRatio = 1D - (double) availableKb / totalKb;
+        if (threshold <= 0 || usedRatio < threshold) {
+            return;
+        }
+        long needFreeBytes = (long) ((usedRatio - threshold) * totalKb * 1024L);
+        log.warn("【MCP STDIO PROCESS】 宿主机内存使用率 {}% 超过阈值 {}%, 需要释放约 {}MB", String.format("%.1f", usedRatio * 100), String.format("%.1f", threshold * 100), needFreeBytes / 1024 / 1024);
+        long minIdleMillis = mcpClientProperties.getMemoryPressureMinIdle();
+        List<McpClientInfo> candidates = stdioClients.stream()
+                .filter(clientInfo -> clientInfo.getIdleMillis() >= minIdleMillis && clientInfo.getProcessRssBytes() > 0)
+                .sorted(Comparator.comparingLong(McpClientInfo::getProcessRssBytes).reversed())
+                .toList();
+        long freedBytes = 0L;
+        for (McpClientInfo clientInfo : candidates) {
+            if (freedBytes >= needFreeBytes) {
+                break;
+            }
+            log.warn("【MCP STDIO PROCESS】 内存压力淘汰客户端 {}, pid:{}, rss:{}MB", clientInfo.getClientName(), clientInfo.getProcessId(), clientInfo.getProcessRssBytes() / 1024 / 1024);
+            freedBytes += clientInfo.getProcessRssBytes();
+            managerMcpSyncClientService.evictMcpClient(clientInfo);
+        }
+        if (freedBytes < needFreeBytes) {
+            log.warn("【MCP STDIO PROCESS】 没有足够的空闲 stdio 客户端可淘汰, 预计释放 {}MB", freedBytes / 1024 / 1024);
+        }
+    }
+
+    private long parseKb(String line) {
+        String[] parts = line.trim().split("\\s+");
+        return parts.length >= 2 ? Long.parseLong(parts[1]) : 0L;
+    }
+}
@@ -0,0 +1,234 @@
+package com.pig4cloud.pig.mcp.client.manager;
+
+import com.pig4cloud.pig.mcp.client.manager.model.McpClientInfo;
+import com.pig4cloud.pig.mcp.client.manager.task.McpCommonTask;
+import com.pig4cloud.pig.mcp.common.properties.McpClientProperties;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * stdio MCP 客户端预热池。
+ * <p>
+ * stdio 客户端初始化需要 {@code npx} 解析依赖并启动 Node 进程，耗时通常在秒级。
+ * 预热池为每个 stdio 服务（按共享连接池的 key 区分）在后台保持 {@code stdioWarmPoolSize} 个已初始化的客户端，
+ * 注册时直接取用，取走后在后台补充，从而把冷启动从请求链路上移除。
+ * <p>
+ * 预热的服务来源于启动时的默认 MCP 配置以及运行时实际注册过的 stdio 服务，
+ * 数量受 {@code stdioWarmPoolMaxServers} 限制。
+ * <p>
+ * 预热客户端不在心跳调度中，由后台按心跳间隔维护：空闲超过心跳间隔的预热客户端异步 ping 一次，成功则刷新访问时间继续保留，
+ * 失败或已失效则关闭并重新补充；取用时不再 ping，直接交给调用方，之后由正常的心跳调度检查。
+ * 连续 {@code stdioWarmPoolIdleTimeout} 没有注册需求的服务停止预热并关闭其预热客户端，名额留给其他服务。
+ * 预热在独立的 {@code mcpStdioWarmPoolThreadPool} 中执行，线程池已满时丢弃本次补充，不与真实注册争抢初始化线程。
+ */
+@Slf4j
+@Component
+public class McpStdioWarmPool {
+    @Autowired
+    private McpClientProperties mcpClientProperties;
+
+    @Resource(name = "mcpStdioWarmPoolThreadPool")
+    private ExecutorService mcpStdioWarmPoolThreadPool;
+
+    //预热中的 stdio 服务 <poolKey,WarmEntry>
+    private final ConcurrentHashMap<String, WarmEntry> warmEntryMap = new ConcurrentHashMap<>();
+
+    private volatile boolean closed = false;
+
+    /**
+     * 登记一个需要预热的 stdio 服务，并在后台补充到预热数量。
+     *
+     * @param poolKey 共享连接池的 key。
+     * @param factory 构建未初始化客户端的工厂。
+     */
+    public void warmUp(String poolKey, Supplier<McpClientInfo> factory) {
+        WarmEntry warmEntry = getOrCreateWarmEntry(poolKey, factory);
+        if (warmEntry != null) {
+            replenish(poolKey, warmEntry);
+        }
+    }
+
+    /**
+     * 取出一个已初始化的客户端，同时登记该服务的需求并在后台补充。
+     *
+     * @param poolKey 共享连接池的 key。
+     * @param factory 构建未初始化客户端的工厂。
+     * @return 已初始化的客户端，预热池中没有可用客户端时返回 {@code null}。
+     */
+    public McpClientInfo take(String poolKey, Supplier<McpClientInfo> factory) {
+        WarmEntry warmEntry = getOrCreateWarmEntry(poolKey, factory);
+        if (warmEntry == null) {
+            return null;
+        }
+        McpClientInfo mcpClientInfo;
+        while ((mcpClientInfo = warmEntry.ready.poll()) != null && !mcpClientInfo.isValid()) {
+            log.warn("【MCP STDIO WARM POOL】 丢弃已失效的预热客户端 {}", mcpClientInfo.getClientName());
+            close(mcpClientInfo);
+        }
+        replenish(poolKey, warmEntry);
+        if (mcpClientInfo != null) {
+            log.debug("【MCP STDIO WARM POOL】 使用预热客户端 {}", mcpClientInfo.getClientName());
+            mcpClientInfo.access();
+        }
+        return mcpClientInfo;
+    }
+
+    /**
+     * 按心跳间隔维护预热客户端：移除长期没有需求的服务，关闭已失效的客户端，异步 ping 空闲超过心跳间隔的客户端，并重新补充。
+     */
+    @Scheduled(fixedDelayString = "${mcp.client.heartbeat-interval:60000}")
+    public void maintain() {
+        if (closed) {
+            return;
+        }
+        long idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(mcpClientProperties.getStdioWarmPoolIdleTimeout());
+        warmEntryMap.forEach((poolKey, warmEntry) -> {
+            if (System.nanoTime() - warmEntry.lastDemandNanos > idleTimeoutNanos) {
+                if (warmEntryMap.remove(poolKey, warmEntry)) {
+                    log.info("【MCP STDIO WARM POOL】 服务长期没有注册需求, 停止预热, poolKey:{}", poolKey);
+                    warmEntry.removed = true;
+                    closeReady(warmEntry);
+                }
+                return;
+            }
+            boolean evicted = warmEntry.ready.removeIf(mcpClientInfo -> {
+                if (mcpClientInfo.isValid()) {
+                    return false;
+                }
+                log.info("【MCP STDIO WARM POOL】 清理已失效的预热客户端 {}", mcpClientInfo.getClientName());
+                close(mcpClientInfo);
+                return true;
+            });
+            warmEntry.ready.stream()
+                    .filter(mcpClientInfo -> mcpClientInfo.getIdleMillis() >= mcpClientProperties.getHeartbeatInterval())
+                    .forEach(mcpClientInfo -> ping(poolKey, warmEntry, mcpClientInfo));
+            if (evicted) {
+                replenish(poolKey, warmEntry);
+            }
+        });
+    }
+
+    /**
+     * 在 ping 线程池中检查预热客户端，成功时刷新访问时间继续保留，失败时关闭并重新补充。已被取走的客户端交给心跳调度处理。
+     */
+    private void ping(String poolKey, WarmEntry warmEntry, McpClientInfo mcpClientInfo) {
+        mcpClientInfo.pingAsync(TimeUnit.SECONDS.toMillis(McpCommonTask.MCP_PING_TIMEOUT_SECONDS)).thenAccept(alive -> {
+            if (alive) {
+                mcpClientInfo.access();
+            } else if (warmEntry.ready.remove(mcpClientInfo)) {
+                log.warn("【MCP STDIO WARM POOL】 预热客户端 {} ping 失败, 关闭并重新补充", mcpClientInfo.getClientName());
+                close(mcpClientInfo);
+                replenish(poolKey, warmEntry);
+            }
+        });
+    }
+
+    private WarmEntry getOrCreateWarmEntry(String poolKey, Supplier<McpClientInfo> factory) {
+        if (closed || mcpClientProperties.getStdioWarmPoolSize() <= 0) {
+            return null;
+        }
+        WarmEntry warmEntry = warmEntryMap.get(poolKey);
+        if (warmEntry == null && warmEntryMap.size() < mcpClientProperties.getStdioWarmPoolMaxServers()) {
+            warmEntry = warmEntryMap.computeIfAbsent(poolKey, key -> new WarmEntry(factory));
+        }
+        if (warmEntry != null) {
+            warmEntry.lastDemandNanos = System.nanoTime();
+        }
+        return warmEntry;
+    }
+
+    /**
+     * 在后台把预热客户端补充到配置的数量。
+     * <p>
+     * 初始化直接在 {@code mcpStdioWarmPoolThreadPool} 的任务内同步执行，不再向同一线程池嵌套提交任务，
+     * 超时由客户端自身的请求超时控制。线程池已满时丢弃本次补充，等下次取用或清理时再补充。
+     */
+    private void replenish(String poolKey, WarmEntry warmEntry) {
+        while (!closed && !warmEntry.removed) {
+            int pending = warmEntry.pending.get();
+            if (warmEntry.ready.size() + pending >= mcpClientProperties.getStdioWarmPoolSize()) {
+                return;
+            }
+            if (!warmEntry.pending.compareAndSet(pending, pending + 1)) {
+                continue;
+            }
+            try {
+                mcpStdioWarmPoolThreadPool.execute(() -> initialize(poolKey, warmEntry));
+            } catch (RejectedExecutionException e) {
+                warmEntry.pending.decrementAndGet();
+                log.debug("【MCP STDIO WARM POOL】 预热线程池已满, 丢弃本次补充, poolKey:{}", poolKey);
+                return;
+            }
+        }
+    }
+
+    private void initialize(String poolKey, WarmEntry warmEntry) {
+        McpClientInfo mcpClientInfo = null;
+        try {
+            mcpClientInfo = warmEntry.factory.get();
+            mcpClientInfo.getMcpSyncClient().initialize();
+            mcpClientInfo.access();
+            warmEntry.ready.offer(mcpClientInfo);
+            log.debug("【MCP STDIO WARM POOL】 预热客户端 {} 初始化完成", mcpClientInfo.getClientName());
+            if (closed || warmEntry.removed) {
+                closeReady(warmEntry);
+            }
+        } catch (Exception e) {
+            log.error("【MCP STDIO WARM POOL】 预热客户端初始化失败, poolKey:{}", poolKey, e);
+            if (mcpClientInfo != null) {
+                close(mcpClientInfo);
+            }
+        } finally {
+            warmEntry.pending.decrementAndGet();
+        }
+    }
+
+    /**
+     * 应用关闭时关闭所有未被取用的预热客户端，避免遗留 stdio 进程。
+     */
+    @PreDestroy
+    public void destroy() {
+        closed = true;
+        warmEntryMap.values().forEach(this::closeReady);
+    }
+
+    private void closeReady(WarmEntry warmEntry) {
+        McpClientInfo mcpClientInfo;
+        while ((mcpClientInfo = warmEntry.ready.poll()) != null) {
+            close(mcpClientInfo);
+        }
+    }
+
+    private void close(McpClientInfo mcpClientInfo) {
+        mcpClientInfo.closeMcpSyncClient(null, mcpClientInfo.getClientName(), mcpClientInfo.getMcpSyncClient());
+    }
+
+    /**
+     * 单个 stdio 服务的预热状态。
+     */
+    private static class WarmEntry {
+        private final Supplier<McpClientInfo> factory;
+        private final ConcurrentLinkedQueue<McpClientInfo> ready = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pending = new AtomicInteger(0);
+        //最近一次登记需求的单调时间戳
+        private volatile long lastDemandNanos = System.nanoTime();
+        //是否已停止预热
+        private volatile boolean removed;
+
+        private WarmEntry(Supplier<McpClientInfo> factory) {
+            this.factory = factory;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.pig4cloud.pig.mcp.client.manager;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.modelcontextprotocol.spec.McpClientTransport;
+import io.modelcontextprotocol.spec.McpError;
+import io.modelcontextprotocol.spec.McpSchema;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * 使用外部传入的 {@link HttpClient} 的 SSE 传输对象。
+ * <p>
+ * 协议与 SDK 的 {@code HttpClientSseClientTransport} 一致：GET 订阅 SSE 端点，收到 {@code endpoint} 事件后
+ * 把 JSON-RPC 消息 POST 到该地址，服务端的响应通过 {@code message} 事件返回。
+ * 区别在于 HttpClient 由调用方传入，多个传输对象可以共用；并且持有 SSE 响应体的订阅，关闭时取消订阅即断开长连接，
+ * 不依赖 HttpClient 自身的关闭方法。
+ */
+@Slf4j
+public class SharedHttpClientSseClientTransport implements McpClientTransport {
+    private static final String MESSAGE_EVENT_TYPE = "message";
+    private static final String ENDPOINT_EVENT_TYPE = "endpoint";
+
+    private final HttpClient httpClient;
+    //请求模板 每个请求复制后使用
+    private final HttpRequest.Builder requestBuilder;
+    private final String baseUri;
+    private final String sseEndpoint;
+    private final ObjectMapper objectMapper;
+    //等待 endpoint 事件的最长时间
+    private final Duration endpointTimeout;
+    //关闭回调 用于从工厂的存活列表中移除
+    private final Consumer<SharedHttpClientSseClientTransport> onClose;
+
+    //服务端通过 endpoint 事件下发的消息地址
+    private final CompletableFuture<String> messageEndpoint = new CompletableFuture<>();
+    //SSE 响应体的订阅 取消即断开长连接
+    private final AtomicReference<Flow.Subscription> sseSubscription = new AtomicReference<>();
+    private volatile boolean closing;
+
+    /**
+     * @param httpClient      共享的 HttpClient
+     * @param requestBuilder  请求模板，每个请求复制后使用
+     * @param baseUri         服务地址
+     * @param sseEndpoint     SSE 端点
+     * @param objectMapper    ObjectMapper
+     * @param endpointTimeout 等待 endpoint 事件的最长时间
+     * @param onClose         关闭回调
+     */
+    public SharedHttpClientSseClientTransport(HttpClient httpClient, HttpRequest.Builder requestBuilder, String baseUri, String sseEndpoint,
+                                              ObjectMapper objectMapper, Duration endpointTimeout, Consumer<SharedHttpClientSseClientTransport> onClose) {
+        this.httpClient = httpClient;
+        this.requestBuilder = requestBuilder;
+        this.baseUri = baseUri;
+        this.sseEndpoint = sseEndpoint;
+        this.objectMapper = objectMapper;
+        this.endpointTimeout = endpointTimeout;
+        this.onClose = onClose;
+    }
+
+    @Override
+    public Mono<Void> connect(Function<Mono<McpSchema.JSONRPCMessage>, Mono<McpSchema.JSONRPCMessage>> handler) {
+        return Mono.create(sink -> {
+            HttpRequest request = requestBuilder.copy()
+                    .uri(URI.create(baseUri + sseEndpoint))
+                    .header("Accept", "text/event-stream")
+                    .header("Cache-Control", "no-cache")
+                    .GET()
+                    .build();
+            SseLineSubscriber lineSubscriber = new SseLineSubscriber(handler, sink);
+            httpClient.sendAsync(request, responseInfo -> responseInfo.statusCode() == 200
+                            ? HttpResponse.BodySubscribers.fromLineSubscriber(lineSubscriber)
+                            : HttpResponse.BodySubscribers.replacing(null))
+                    .whenComplete((response, throwable) -> {
+                        if (throwable != null) {
+                            failConnect(sink, throwable);
+                        } else if (response.statusCode() != 200) {
+                            failConnect(sink, new McpError("SSE 连接失败, 状态码:" + response.statusCode()));
+                        }
+                    });
+        });
+    }
+
+    @Override
+    public Mono<Void> sendMessage(McpSchema.JSONRPCMessage message) {
+        if (closing) {
+            return Mono.empty();
+        }
+        // 与 SDK 一致，消息地址未下发前等待 endpoint 事件，但不阻塞调用线程
+        return Mono.fromFuture(messageEndpoint.copy())
+                .timeout(endpointTimeout)
+                .onErrorMap(TimeoutException.class, e -> new McpError("等待 SSE 消息地址超时"))
+                .flatMap(endpoint -> {
+                    String body;
+                    try {
+                        body = objectMapper.writeValueAsString(message);
+                    } catch (IOException e) {
+                        return Mono.error(new McpError("序列化 JSON-RPC 消息失败: " + e.getMessage()));
+                    }
+                    HttpRequest request = requestBuilder.copy()
+                            .uri(URI.create(baseUri + endpoint))
+                            .header("Content-Type", "application/json")
+                            .POST(HttpRequest.BodyPublishers.ofString(body))
+                            .build();
+                    return Mono.fromFuture(httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding()));
+                })
+                .doOnNext(response -> {
+                    int status = response.statusCode();
+                    if (status != 200 && status != 201 && status != 202 && status != 206) {
+                        log.error("【MCP SSE】 发送消息失败 地址:{} 状态码:{}", baseUri, status);
+                    }
+                })
+                .then();
+    }
+
+    /**
+     * 取消 SSE 响应体的订阅并断开长连接。
+     */
+    @Override
+    public Mono<Void> closeGracefully() {
+        return Mono.fromRunnable(() -> {
+            if (closing) {
+                return;
+            }
+            closing = true;
+            Flow.Subscription subscription = sseSubscription.getAndSet(null);
+            if (subscription != null) {
+                subscription.cancel();
+            }
+            messageEndpoint.completeExceptionally(new McpError("SSE 传输对象已关闭"));
+            onClose.accept(this);
+        });
+    }
+
+    @Override
+    public <T> T unmarshalFrom(Object data, TypeReference<T> typeRef) {
+        return objectMapper.convertValue(data, typeRef);
+    }
+
+    private void failConnect(MonoSink<Void> sink, Throwable throwable) {
+        if (closing) {
+            sink.success();
+            return;
+        }
+        messageEndpoint.completeExceptionally(throwable);
+        sink.error(throwable);
+    }
+
+    /**
+     * 按行解析 SSE 事件：{@code event:} 指定类型，{@code data:} 可多行，空行结束一个事件。
+     */
+    private class SseLineSubscriber implements Flow.Subscriber<String> {
+        private final Function<Mono<McpSchema.JSONRPCMessage>, Mono<McpSchema.JSONRPCMessage>> handler;
+        private final MonoSink<Void> sink;
+        private final StringBuilder data = new StringBuilder();
+        private String eventType;
+
+        SseLineSubscriber(Function<Mono<McpSchema.JSONRPCMessage>, Mono<McpSchema.JSONRPCMessage>> handler, MonoSink<Void> sink) {
+            this.handler = handler;
+            this.sink = sink;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            sseSubscription.set(subscription);
+            // 订阅建立前已关闭，直接断开
+            if (closing && sseSubscription.compareAndSet(subscription, null)) {
+                subscription.cancel();
+                return;
+            }
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(String line) {
+            if (line.isEmpty()) {
+                dispatch();
+            } else if (line.startsWith("data:")) {
+                if (!data.isEmpty()) {
+                    data.append('\n');
+                }
+                data.append(line.substring(line.startsWith("data: ") ? 6 : 5));
+            } else if (line.startsWith("event:")) {
+                eventType = line.substring(6).trim();
+            }
+        }
+
+        private void dispatch() {
+            String type = eventType == null ? MESSAGE_EVENT_TYPE : eventType;
+            String payload = data.toString();
+            eventType = null;
+            data.setLength(0);
+            if (payload.isEmpty() && !ENDPOINT_EVENT_TYPE.equals(type)) {
+                return;
+            }
+            if (ENDPOINT_EVENT_TYPE.equals(type)) {
+                messageEndpoint.complete(payload);
+                sink.success();
+            } else if (MESSAGE_EVENT_TYPE.equals(type)) {
+                try {
+                    McpSchema.JSONRPCMessage message = McpSchema.deserializeJsonRpcMessage(objectMapper, payload);
+                    handler.apply(Mono.just(message)).subscribe();
+                } catch (IOException e) {
+                    log.error("【MCP SSE】 解析消息失败 地址:{} 内容:{}", baseUri, payload, e);
+                }
+            } else {
+                log.debug("【MCP SSE】 忽略未知事件类型:{} 地址:{}", type, baseUri);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            if (!closing) {
+                log.error("【MCP SSE】 SSE 连接异常 地址:{}", baseUri, throwable);
+                failConnect(sink, throwable);
+            }
+        }
+
+        @Override
+        public void onComplete() {
+            if (!closing) {
+                log.warn("【MCP SSE】 SSE 连接被服务端关闭 地址:{}", baseUri);
+                failConnect(sink, new McpError("SSE 连接被服务端关闭"));
+            }
+        }
+    }
+}
@@ -1,20 +1,28 @@
 package com.pig4cloud.pig.mcp.client.manager.model;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.pig4cloud.pig.mcp.client.chat.CustomSyncMcpToolCallback;
+import com.pig4cloud.pig.mcp.client.chat.McpToolResultCache;
 import com.pig4cloud.pig.mcp.client.enums.McpClientType;
 import io.modelcontextprotocol.client.McpAsyncClient;
 import io.modelcontextprotocol.client.McpSyncClient;
+import io.modelcontextprotocol.spec.McpSchema;
+import org.springframework.ai.tool.ToolCallback;
 
+import java.time.Duration;
 import java.time.Instant;
-import java.time.ZoneId;
 import java.util.Date;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.concurrent.locks.ReentrantLock;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
 
 /**
  * 存储和管理单个 MCP 客户端实例的信息。
@@ -26,9 +34,19 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class McpClientInfo {
     /**
-     * 尝试获取锁的超时时间（毫秒）。
+     * 客户端状态：可用。
      */
-    private final long TRY_LOCK_TIMEOUT_MS = 200;
+    private static final int STATE_ACTIVE = 0;
+
+    /**
+     * 客户端状态：正在关闭。
+     */
+    private static final int STATE_CLOSING = 1;
+
+    /**
+     * 客户端状态：已关闭。
+     */
+    private static final int STATE_CLOSED = 2;
 
     /**
      * MCP 同步客户端实例。
@@ -50,6 +68,11 @@ public class McpClientInfo {
      */
     private String clientName;
 
+    /**
+     * 共享连接池的 key，由 MCP 配置归一化后计算得到，配置相同的智能体共用同一个客户端。
+     */
+    private String poolKey;
+
     /**
      * 客户端注册的时间戳。
      */
@@ -66,32 +89,110 @@ public class McpClientInfo {
     private Long idleTimeoutMillis;
 
     /**
-     * 最后一次访问时间的原子引用，确保线程安全更新。
+     * 最后一次访问的单调时间戳（{@link System#nanoTime()}），访问时只做一次 volatile 写。
      */
-    private final AtomicReference<Instant> lastAccessTime = new AtomicReference<>(Instant.now());
+    @JsonIgnore
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private volatile long lastAccessNanos = System.nanoTime();
 
     /**
-     * 客户端是否有效的原子布尔标记，确保线程安全的读写状态。
+     * 客户端状态字：{@link #STATE_ACTIVE} -> {@link #STATE_CLOSING} -> {@link #STATE_CLOSED}，只能单向通过 CAS 迁移，
+     * 关闭和淘汰之间的竞争由 CAS 决定唯一的执行者。
      */
-    private final AtomicBoolean isValid = new AtomicBoolean(true);
+    @JsonIgnore
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final AtomicInteger state = new AtomicInteger(STATE_ACTIVE);
 
     /**
-     * 可重入锁，用于保护对客户端状态（如 isValid）的并发访问和修改，特别是在 access 和 close 操作中。
+     * 持有该客户端的智能体数量。0 表示尚未被任何智能体持有，-1 表示引用已全部释放，客户端不可再被持有。
      */
     @JsonIgnore
-    private final ReentrantLock lock = new ReentrantLock();
+    private final AtomicInteger refCount = new AtomicInteger(0);
+
+    /**
+     * 持有该客户端的智能体及其客户端名称，淘汰时只释放这些引用，不必遍历所有智能体。
+     */
+    @JsonIgnore
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final Set<Holder> holders = ConcurrentHashMap.newKeySet();
 
     /**
      * 用于执行 MCP 客户端初始化任务的线程池。
      */
     @JsonIgnore
-    private ThreadPoolExecutor mcpClientInitThreadPool;
+    private ExecutorService mcpClientInitThreadPool;
+
+    /**
+     * 用于执行同步客户端 ping 的线程池，队列满时拒绝而不是在调用线程（心跳时间轮）上执行。
+     */
+    @JsonIgnore
+    private ExecutorService mcpClientPingThreadPool;
+
+    /**
+     * 工具回调缓存，避免每次问答都向 MCP 服务端发起 listTools 请求。
+     */
+    @JsonIgnore
+    private volatile ToolCallback[] toolCallbacks;
+
+    /**
+     * 工具回调缓存的加载时间（毫秒）。
+     */
+    @JsonIgnore
+    private volatile long toolCallbacksLoadTime;
 
     /**
-     * 用于执行 MCP 客户端心跳检查任务的线程池。
+     * 进行中的工具回调加载，保证同一客户端同一时刻只有一个 listTools 请求，其余调用方共享该结果而不是阻塞在锁上。
      */
     @JsonIgnore
-    private ThreadPoolExecutor mcpClientHeartbeatThreadPool;
+    private final AtomicReference<CompletableFuture<ToolCallback[]>> toolCallbacksLoading = new AtomicReference<>();
+
+    /**
+     * stdio 子进程的唯一标记，用于定位子进程，SSE 客户端为 null。
+     */
+    @JsonIgnore
+    private String processMarker;
+
+    /**
+     * stdio 子进程的 PID，首次采样时解析。
+     */
+    private volatile Long processId;
+
+    /**
+     * stdio 子进程（含其所有后代进程）的常驻内存，单位字节。
+     */
+    private volatile long processRssBytes;
+
+    /**
+     * stdio 子进程（含其所有后代进程）在最近一个采样周期内的 CPU 使用率，100 表示占满一个核。
+     */
+    private volatile double processCpuPercent;
+
+    /**
+     * 上一次采样时子进程累计的 CPU 时间（纳秒），用于计算 CPU 使用率。
+     */
+    @JsonIgnore
+    private volatile long processCpuNanos;
+
+    /**
+     * 上一次采样的单调时间戳（纳秒），0 表示尚未采样。
+     */
+    @JsonIgnore
+    private volatile long processSampleNanos;
+
+    /**
+     * 工具结果缓存，为 null 时不缓存工具调用结果。
+     */
+    @JsonIgnore
+    private McpToolResultCache mcpToolResultCache;
+
+    /**
+     * 工具 schema JSON 的长度上限，超出后精简，小于等于0时不精简。
+     */
+    @JsonIgnore
+    private int toolSchemaMaxChars;
 
     /**
      * 同步客户端构造函数。
@@ -103,9 +204,9 @@ public class McpClientInfo {
      * @param registerTime                 注册时间
      * @param idleTimeoutMillis            链接最大空闲时间
      * @param mcpClientInitThreadPool      初始化线程池。
-     * @param mcpClientHeartbeatThreadPool 心跳检查线程池。
+     * @param mcpClientPingThreadPool      ping 线程池。
      */
-    public McpClientInfo(McpClientType clientType, String clientName, McpSyncClient mcpSyncClient, Boolean defaultFlag, Date registerTime, Long idleTimeoutMillis, ThreadPoolExecutor mcpClientInitThreadPool, ThreadPoolExecutor mcpClientHeartbeatThreadPool) {
+    public McpClientInfo(McpClientType clientType, String clientName, McpSyncClient mcpSyncClient, Boolean defaultFlag, Date registerTime, Long idleTimeoutMillis, ExecutorService mcpClientInitThreadPool, ExecutorService mcpClientPingThreadPool) {
         this.clientType = clientType;
         this.clientName = clientName;
         this.mcpSyncClient = mcpSyncClient;
@@ -113,9 +214,7 @@ public class McpClientInfo {
         this.idleTimeoutMillis = idleTimeoutMillis;
         this.defaultFlag = defaultFlag;
         this.mcpClientInitThreadPool = mcpClientInitThreadPool;
-        this.mcpClientHeartbeatThreadPool = mcpClientHeartbeatThreadPool;
-        // 初始化时记录访问时间
-        this.lastAccessTime.set(Instant.now());
+        this.mcpClientPingThreadPool = mcpClientPingThreadPool;
     }
 
     /**
@@ -135,9 +234,7 @@ public class McpClientInfo {
         this.defaultFlag = defaultFlag;
         // 异步客户端目前不使用初始化和心跳线程池
         // this.mcpClientInitThreadPool = mcpClientInitThreadPool;
-        // this.mcpClientHeartbeatThreadPool = mcpClientHeartbeatThreadPool;
-        // 初始化时记录访问时间
-        this.lastAccessTime.set(Instant.now());
+        // this.mcpClientPingThreadPool = mcpClientPingThreadPool;
     }
 
 
@@ -158,10 +255,7 @@ public class McpClientInfo {
         log.debug("【MCP SYNC CLIENT MANAGER】 开始初始化客户端, 智能体id:{}, 客户端名称:{}", agentId, clientName);
 
         // 提交初始化任务到线程池
-        Future<?> future = mcpClientInitThreadPool.submit(() -> {
-            mcpClientInfo.getMcpSyncClient().initialize(); // 执行实际的初始化逻辑
-            mcpClientInfo.access(); // 初始化成功后，更新最后一次访问时间
-        });
+        Future<?> future = mcpClientInfo.submitInitMcpSyncClient();
 
         try {
             // 在指定的超时时间内等待初始化完成
@@ -184,10 +278,100 @@ public class McpClientInfo {
         }
     }
 
+    /**
+     * 将 MCP 同步客户端的初始化任务提交到 {@code mcpClientInitThreadPool}，不等待结果。
+     * <p>
+     * 初始化成功后会更新最后访问时间。调用方通过返回的 {@link Future} 控制超时和取消。
+     *
+     * @return 初始化任务的 {@link Future}
+     */
+    public Future<?> submitInitMcpSyncClient() {
+        return mcpClientInitThreadPool.submit(() -> {
+            mcpSyncClient.initialize(); // 执行实际的初始化逻辑
+            access(); // 初始化成功后，更新最后一次访问时间
+        });
+    }
+
+    /**
+     * 将 ping 任务提交到 {@code mcpClientPingThreadPool}，不等待结果。
+     *
+     * @return ping 任务的 {@link Future}，ping 失败或线程池已满被拒绝时以 {@link ExecutionException} 结束
+     */
+    public Future<Object> submitPing() {
+        try {
+            return mcpClientPingThreadPool.submit(this::doPing);
+        } catch (RejectedExecutionException e) {
+            log.warn("【MCP SYNC CLIENT MANAGER】 ping 线程池已满, 客户端 {} 本次 ping 视为失败", clientName);
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private Object doPing() {
+        try {
+            // 执行实际的 ping 操作
+            return mcpSyncClient.ping();
+        } catch (Exception e) {
+            // 在任务内部捕获异常，以便 future.get() 可以区分执行异常和超时/中断
+            log.error("【MCP SYNC CLIENT MANAGER】 ping {} 发生异常", clientName, e);
+            // 包装并重新抛出，以便 ExecutionException 能捕获它
+            throw new RuntimeException("Ping failed for " + clientName, e);
+        }
+    }
+
+    /**
+     * 以非阻塞方式执行健康检查 (ping)，调用线程不等待结果。
+     * <p>
+     * 异步客户端直接订阅 {@code ping()}；同步客户端把 ping 提交到专用的 {@code mcpClientPingThreadPool} 执行一次，
+     * 超时由 {@link CompletableFuture#orTimeout(long, TimeUnit)} 控制，超时后中断仍阻塞在 ping 上的线程，不再由另一个线程阻塞在 {@code future.get} 上。
+     * 线程池已满时直接拒绝并视为一次失败的心跳，ping 永远不会在调用线程（心跳时间轮）上执行。
+     *
+     * @param timeoutMillis ping 超时时间（毫秒）
+     * @return ping 成功时以 {@code true} 完成，失败或超时时以 {@code false} 完成，不会异常结束
+     */
+    public CompletableFuture<Boolean> pingAsync(long timeoutMillis) {
+        if (mcpSyncClient == null) {
+            return mcpAsyncClient.ping()
+                    .timeout(Duration.ofMillis(timeoutMillis))
+                    .map(pingResult -> true)
+                    .onErrorResume(e -> {
+                        log.warn("【MCP Client INFO】客户端 {} ping 失败: {}", clientName, e.toString());
+                        return Mono.just(false);
+                    })
+                    .defaultIfEmpty(true)
+                    .toFuture();
+        }
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        Future<?> task;
+        try {
+            task = mcpClientPingThreadPool.submit(() -> {
+                try {
+                    mcpSyncClient.ping();
+                    result.complete(true);
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.warn("【MCP SYNC CLIENT MANAGER】 ping 线程池已满, 客户端 {} 本次心跳视为失败", clientName);
+            return CompletableFuture.completedFuture(false);
+        }
+        return result
+                .orTimeout(timeoutMillis, TimeUnit.MILLISECONDS)
+                .handle((pingResult, e) -> {
+                    if (e != null) {
+                        // 超时后中断阻塞在 ping 上的线程，释放线程池线程
+                        task.cancel(true);
+                        log.warn("【MCP SYNC CLIENT MANAGER】 服务名称: {} ping 失败: {}", clientName, e.toString());
+                        return false;
+                    }
+                    return true;
+                });
+    }
+
     /**
      * 对指定的 MCP 同步客户端执行健康检查 (ping)。
      * <p>
-     * 该方法将 ping 操作提交到 {@code mcpClientHeartbeatThreadPool} 线程池异步执行，
+     * 该方法将 ping 操作提交到 {@code mcpClientPingThreadPool} 线程池异步执行，
      * 并使用 {@link Future} 在指定的超时时间内等待结果。
      * 通过调用 {@code mcpClientInfo.getMcpSyncClient().ping()} 来检查 MCP 服务器的健康状态。
      * 如果 ping 成功，则认为服务器健康；如果 ping 失败（抛出异常或超时），则认为服务器不健康。
@@ -200,17 +384,7 @@ public class McpClientInfo {
     public boolean startHealthCheck(String clientName, McpClientInfo mcpClientInfo, long timeoutSeconds) {
         Future<Object> future = null;
         try {
-            future = mcpClientHeartbeatThreadPool.submit(() -> {
-                try {
-                    // 执行实际的 ping 操作
-                    return mcpClientInfo.getMcpSyncClient().ping();
-                } catch (Exception e) {
-                    // 在任务内部捕获异常，以便 future.get() 可以区分执行异常和超时/中断
-                    log.error("【MCP SYNC CLIENT MANAGER】 ping {} 发生异常", clientName, e);
-                    // 包装并重新抛出，以便 ExecutionException 能捕获它
-                    throw new RuntimeException("Ping failed for " + clientName, e);
-                }
-            });
+            future = mcpClientInfo.submitPing();
             // 在指定的超时时间内等待 ping 操作完成
             Object pingResult = future.get(timeoutSeconds, TimeUnit.SECONDS);
             log.debug("【MCP SYNC CLIENT MANAGER】 服务名称: {} ping success result:{} 心跳检查健康", clientName, pingResult);
@@ -236,62 +410,247 @@ public class McpClientInfo {
     }
 
     /**
-     * 记录一次客户端访问，更新最后访问时间。
+     * 获取当前客户端的工具回调列表，优先使用缓存。
      * <p>
-     * 此方法使用带超时的尝试锁 ({@code tryLock}) 来获取 {@link #lock}，以避免死锁和无限等待。
-     * 在获取锁后，检查客户端是否仍然有效 ({@link #isValid})。
-     * 如果有效，则更新 {@link #lastAccessTime} 为当前时间。
+     * 缓存在以下情况下失效并重新调用 {@code listTools} 加载：
+     * 1. 尚未加载过；
+     * 2. 超过有效期 {@code ttlMillis}（小于等于0表示不缓存）；
+     * 3. 通过 {@link #invalidateToolCallbacks()} 主动失效。
+     * 服务端发送 {@code notifications/tools/list_changed} 时由 {@link #refreshToolCallbacks(List)} 直接刷新缓存。
      *
-     * @return 如果成功获取锁并在客户端有效时更新了访问时间，则返回 {@code true}。
-     * 如果在超时时间内未能获取锁，或获取锁后发现客户端已失效，则返回 {@code false}。
-     * 如果线程在尝试获取锁时被中断，也返回 {@code false}。
+     * @param ttlMillis 缓存有效期（毫秒）
+     * @return 工具回调数组
      */
-    public boolean access() {
+    public ToolCallback[] getToolCallbacks(long ttlMillis) {
+        return loadToolCallbacksAsync(ttlMillis, Runnable::run).join();
+    }
+
+    /**
+     * 异步获取当前客户端的工具回调列表，缓存规则同 {@link #getToolCallbacks(long)}。
+     * <p>
+     * 缓存未命中时 single-flight：同一时刻只有第一个调用方向 {@code executor} 提交 {@code listTools}，
+     * 其余调用方拿到同一个 {@link CompletableFuture}，不占用线程等待。调用方对返回值设置超时前需要先派生新的 future，
+     * 避免一个调用方的超时影响其他调用方。{@code executor} 拒绝时返回的 future 以 {@link RejectedExecutionException} 结束。
+     *
+     * @param ttlMillis 缓存有效期（毫秒）
+     * @param executor  执行 listTools 的线程池
+     * @return 工具回调数组的 future
+     */
+    public CompletableFuture<ToolCallback[]> loadToolCallbacksAsync(long ttlMillis, Executor executor) {
+        ToolCallback[] cached = getCachedToolCallbacks(ttlMillis);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        CompletableFuture<ToolCallback[]> loading = new CompletableFuture<>();
+        CompletableFuture<ToolCallback[]> inFlight = toolCallbacksLoading.compareAndExchange(null, loading);
+        if (inFlight != null) {
+            return inFlight;
+        }
         try {
-            // 尝试在指定超时时间内获取锁
-            if (lock.tryLock(TRY_LOCK_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+            executor.execute(() -> {
                 try {
-                    // 双重检查：再次确认客户端是否有效
-                    if (!isValid.get()) {
-                        log.warn("【MCP Client INFO】客户端 {} 无效，拒绝访问", clientName);
-                        return false; // 客户端已关闭或标记为无效
+                    // 双重检查：其他调用方可能刚刚完成加载
+                    ToolCallback[] callbacks = getCachedToolCallbacks(ttlMillis);
+                    if (callbacks == null) {
+                        log.debug("【MCP Client INFO】客户端 {} 工具缓存未命中，重新加载工具列表", clientName);
+                        callbacks = refreshToolCallbacks(mcpSyncClient.listTools().tools());
                     }
-                    // 更新最后访问时间
-                    Instant now = Instant.now();
-                    now.atZone(ZoneId.systemDefault());
-                    lastAccessTime.set(now);
-                    // log.trace("【MCP Client INFO】客户端 {} 访问成功，更新访问时间", clientName); // 调试日志，可选
-                    return true;
+                    loading.complete(callbacks);
+                } catch (Throwable e) {
+                    loading.completeExceptionally(e);
                 } finally {
-                    lock.unlock(); // 确保释放锁
+                    toolCallbacksLoading.compareAndSet(loading, null);
                 }
-            } else {
-                // 获取锁超时
-                log.warn("【MCP Client INFO】客户端 {} 尝试访问时获取锁超时（{}ms），拒绝访问", clientName, TRY_LOCK_TIMEOUT_MS);
+            });
+        } catch (RejectedExecutionException e) {
+            toolCallbacksLoading.compareAndSet(loading, null);
+            loading.completeExceptionally(e);
+        }
+        return loading;
+    }
+
+    /**
+     * 最近一次加载的工具回调，不检查有效期，尚未加载或已失效时返回 {@code null}。
+     * 用于工具发现超时或线程池已满时的降级。
+     *
+     * @return 工具回调数组
+     */
+    public ToolCallback[] getLastToolCallbacks() {
+        return this.toolCallbacks;
+    }
+
+    /**
+     * 使用给定的工具列表刷新工具回调缓存。
+     *
+     * @param tools MCP 服务端返回的工具列表
+     * @return 刷新后的工具回调数组
+     */
+    public ToolCallback[] refreshToolCallbacks(List<McpSchema.Tool> tools) {
+        ToolCallback[] callbacks = tools.stream()
+                .map(tool -> new CustomSyncMcpToolCallback(mcpSyncClient, tool, mcpToolResultCache, poolKey, 0L, toolSchemaMaxChars, this::access))
+                .toArray(ToolCallback[]::new);
+        this.toolCallbacksLoadTime = System.currentTimeMillis();
+        this.toolCallbacks = callbacks;
+        return callbacks;
+    }
+
+    /**
+     * 使工具回调缓存失效，下次获取时重新加载。
+     */
+    public void invalidateToolCallbacks() {
+        this.toolCallbacks = null;
+    }
+
+    /**
+     * 仅从缓存中获取工具回调，不会发起 listTools 请求。
+     *
+     * @param ttlMillis 缓存有效期（毫秒）
+     * @return 缓存有效时返回工具回调数组，否则返回 {@code null}
+     */
+    public ToolCallback[] getCachedToolCallbacks(long ttlMillis) {
+        ToolCallback[] cached = this.toolCallbacks;
+        if (cached != null && ttlMillis > 0 && System.currentTimeMillis() - toolCallbacksLoadTime < ttlMillis) {
+            return cached;
+        }
+        return null;
+    }
+
+    /**
+     * 增加一次智能体引用。
+     * <p>
+     * 引用已全部释放（{@code refCount = -1}）或客户端已失效时返回 {@code false}，调用方需要重新创建客户端。
+     *
+     * @return 引用成功返回 {@code true}，否则返回 {@code false}。
+     */
+    public boolean retain() {
+        while (isValid()) {
+            int count = refCount.get();
+            if (count < 0) {
                 return false;
             }
-        } catch (InterruptedException e) {
-            // 当前线程在等待锁时被中断
-            log.warn("【MCP Client INFO】客户端 {} 尝试访问时获取锁被中断", clientName, e);
-            Thread.currentThread().interrupt(); // 重新设置中断标志
-            return false;
+            if (refCount.compareAndSet(count, count + 1)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 释放一次智能体引用。
+     * <p>
+     * 最后一个引用释放时将 {@code refCount} 置为 -1，此后 {@link #retain()} 都会失败，
+     * 保证"释放到 0"与"关闭客户端"之间不会有新的智能体持有它。
+     *
+     * @return 释放的是最后一个引用返回 {@code true}，调用方负责关闭客户端；否则返回 {@code false}。
+     */
+    public boolean release() {
+        while (true) {
+            int count = refCount.get();
+            if (count <= 0) {
+                return false;
+            }
+            int next = count == 1 ? -1 : count - 1;
+            if (refCount.compareAndSet(count, next)) {
+                return next < 0;
+            }
+        }
+    }
+
+    /**
+     * 登记一个持有者，在智能体引用该客户端时调用。
+     *
+     * @param agentId    智能体 ID
+     * @param clientName 智能体配置中的客户端名称
+     */
+    public void addHolder(String agentId, String clientName) {
+        holders.add(new Holder(agentId, clientName));
+    }
+
+    /**
+     * 移除一个持有者，在智能体释放该客户端时调用。
+     *
+     * @param agentId    智能体 ID
+     * @param clientName 智能体配置中的客户端名称
+     */
+    public void removeHolder(String agentId, String clientName) {
+        holders.remove(new Holder(agentId, clientName));
+    }
+
+    /**
+     * 当前持有者的快照。
+     *
+     * @return 持有者列表
+     */
+    public List<Holder> holders() {
+        return List.copyOf(holders);
+    }
+
+    /**
+     * 客户端的持有者
+     *
+     * @param agentId    智能体 ID
+     * @param clientName 智能体配置中的客户端名称
+     */
+    public record Holder(String agentId, String clientName) {
+    }
+
+    /**
+     * 客户端是否可用。
+     *
+     * @return 未开始关闭返回 {@code true}
+     */
+    @JsonProperty("isValid")
+    public boolean isValid() {
+        return state.get() == STATE_ACTIVE;
+    }
+
+    /**
+     * 记录一次客户端访问，更新最后访问时间。
+     * <p>
+     * 无锁实现：读取一次状态字，客户端可用时写入当前的单调时间戳。
+     * 与关闭并发时最多多记录一次访问时间，不影响关闭结果。
+     *
+     * @return 客户端可用时返回 {@code true}，已关闭或正在关闭时返回 {@code false}。
+     */
+    public boolean access() {
+        if (state.get() != STATE_ACTIVE) {
+            log.warn("【MCP Client INFO】客户端 {} 无效，拒绝访问", clientName);
+            return false; // 客户端已关闭或标记为无效
         }
+        lastAccessNanos = System.nanoTime();
+        return true;
+    }
+
+    /**
+     * 获取距最后一次访问的空闲时间。
+     *
+     * @return 空闲时间（毫秒）
+     */
+    @JsonIgnore
+    public long getIdleMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastAccessNanos);
+    }
+
+    /**
+     * 最后一次访问的时间，由单调时间戳换算得到，仅用于展示。
+     *
+     * @return 最后一次访问的时间
+     */
+    public Instant getLastAccessTime() {
+        return Instant.now().minusMillis(getIdleMillis());
     }
 
     /**
      * 检查客户端是否因空闲时间过长而超时。
      * <p>
-     * 计算当前时间与 {@link #lastAccessTime} 之间的差值，
+     * 计算当前时间与 {@link #lastAccessNanos} 之间的差值，
      * 并与配置的 {@link #idleTimeoutMillis} 进行比较。
      *
      * @return 如果当前空闲时间超过了 {@code idleTimeoutMillis}，则返回 {@code true}，表示空闲超时；否则返回 {@code false}。
      */
     public boolean checkIdle() {
-        // 读取原子引用中的最后访问时间
-        Instant lastAccess = lastAccessTime.get();
-        Instant now = Instant.now();
         // 计算空闲时间（毫秒）
-        long idleTimeMillis = now.toEpochMilli() - lastAccess.toEpochMilli();
+        long idleTimeMillis = getIdleMillis();
 
         // 检查是否超过配置的空闲超时阈值
         if (idleTimeMillis > idleTimeoutMillis) {
@@ -306,9 +665,8 @@ public class McpClientInfo {
     /**
      * 关闭 MCP 同步客户端连接并标记为无效。
      * <p>
-     * 此方法使用带超时的尝试锁 ({@code tryLock}) 来获取 {@link #lock}。
-     * 获取锁后，使用 {@link AtomicBoolean#compareAndSet(boolean, boolean)} 确保 {@code close()} 操作只执行一次，
-     * 并将客户端标记为无效 ({@code isValid = false})。
+     * 通过 CAS 将状态从 {@link #STATE_ACTIVE} 迁移到 {@link #STATE_CLOSING}，只有迁移成功的线程执行 {@code close()}，
+     * 完成后置为 {@link #STATE_CLOSED}。并发的关闭或淘汰请求不会等待锁，也不会因为锁超时而漏关。
      * 实际的关闭操作委托给 {@link McpSyncClient#close()}。
      *
      * @param agentId    智能体 ID (用于日志记录)。
@@ -317,42 +675,26 @@ public class McpClientInfo {
      *                   **注意:** 确保传入的 syncClient 与 this.mcpSyncClient 是同一个实例，否则可能关闭错误的对象。
      */
     public void closeMcpSyncClient(String agentId, String clientName, McpSyncClient syncClient) {
+        // 只有状态从可用迁移到正在关闭的线程执行关闭逻辑
+        if (!state.compareAndSet(STATE_ACTIVE, STATE_CLOSING)) {
+            log.warn("【MCP Client INFO】客户端 {} 已经被关闭，无需重复操作。", clientName);
+            return;
+        }
+        log.info("【MCP Client INFO】客户端 {} 正在关闭连接...", clientName);
         try {
-            // 尝试在指定超时时间内获取锁
-            if (lock.tryLock(TRY_LOCK_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
-                try {
-                    // 使用 CAS 操作确保原子性地将 isValid 从 true 更新为 false
-                    // 只有在状态从未关闭 (true) 变为关闭 (false) 时，才执行内部逻辑
-                    if (isValid.compareAndSet(true, false)) {
-                        log.info("【MCP Client INFO】客户端 {} 正在关闭连接...", clientName);
-                        try {
-                            if (this.mcpSyncClient != null) {
-                                this.mcpSyncClient.close(); // 调用底层客户端的关闭方法
-                                log.info("【MCP Client INFO】客户端 {} 连接已成功关闭。", clientName);
-                            } else {
-                                log.warn("【MCP Client INFO】尝试关闭客户端 {}，但 mcpSyncClient 实例为空。", clientName);
-                            }
-                        } catch (Exception e) {
-                            // 底层 close() 方法可能抛出异常
-                            log.error("【MCP SYNC CLIENT MANAGER】关闭客户端 {} 连接时发生异常。Agent ID: {}", clientName, agentId, e);
-                        }
-                    } else {
-                        // CAS 操作失败，意味着 isValid 已经是 false，说明客户端已被关闭
-                        log.warn("【MCP Client INFO】客户端 {} 已经被关闭，无需重复操作。", clientName);
-                    }
-                } finally {
-                    lock.unlock(); // 确保释放锁
-                }
+            if (this.mcpSyncClient != null) {
+                this.mcpSyncClient.close(); // 调用底层客户端的关闭方法
+                log.info("【MCP Client INFO】客户端 {} 连接已成功关闭。", clientName);
             } else {
-                // 获取锁超时
-                log.warn("【MCP Client INFO】尝试关闭客户端 {} 时获取锁超时（{}ms），无法关闭。", clientName, TRY_LOCK_TIMEOUT_MS);
-                // 考虑是否需要后续重试或其他处理机制
+                log.warn("【MCP Client INFO】尝试关闭客户端 {}，但 mcpSyncClient 实例为空。", clientName);
             }
-        } catch (InterruptedException e) {
-            // 当前线程在等待锁时被中断
-            log.error("【MCP SYNC CLIENT MANAGER】尝试关闭客户端 {} 时获取锁被中断。Agent ID: {}", clientName, agentId, e);
-            Thread.currentThread().interrupt(); // 重新设置中断标志
+        } catch (Exception e) {
+            // 底层 close() 方法可能抛出异常
+            log.error("【MCP SYNC CLIENT MANAGER】关闭客户端 {} 连接时发生异常。Agent ID: {}", clientName, agentId, e);
+        } finally {
+            state.set(STATE_CLOSED);
         }
     }
 
+
 }
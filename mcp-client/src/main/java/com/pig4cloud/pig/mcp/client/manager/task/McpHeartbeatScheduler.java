@@ -0,0 +1,157 @@
+package com.pig4cloud.pig.mcp.client.manager.task;
+
+import com.pig4cloud.pig.mcp.client.manager.model.McpClientInfo;
+import com.pig4cloud.pig.mcp.common.properties.McpClientProperties;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * MCP 客户端心跳调度器
+ * <p>
+ * 每个客户端在注册时登记到 {@link McpHeartbeatWheelTimer}，到期后以非阻塞方式 ping，
+ * ping 完成后根据结果决定移除客户端或登记下一次心跳。每个客户端的到期时间带有随机抖动，
+ * 同一时间注册的大量客户端不会在同一时刻集中 ping。
+ * <p>
+ * 心跳不再由定时任务遍历整个注册表，也没有线程阻塞等待 ping 结果，调度成本与注册表大小无关。
+ * 心跳间隔随客户端活跃情况自适应：最近被访问过的客户端不 ping，稳定的空闲客户端指数退避，只有 ping 失败后才加密探测，
+ * 详见 {@link #heartbeat(HeartbeatState)}。
+ */
+@Slf4j
+@Component
+public class McpHeartbeatScheduler {
+    /**
+     * 时间轮刻度（毫秒）
+     */
+    private static final long TICK_MILLIS = 100L;
+
+    /**
+     * 时间轮槽位数量，一圈约 51 秒
+     */
+    private static final int WHEEL_SIZE = 512;
+
+    /**
+     * 退避倍数的上限（2 的幂次），防止移位溢出
+     */
+    private static final int MAX_BACKOFF_SHIFT = 16;
+
+    @Autowired
+    private McpClientProperties mcpClientProperties;
+
+    private McpHeartbeatWheelTimer wheelTimer;
+
+    @PostConstruct
+    public void init() {
+        wheelTimer = new McpHeartbeatWheelTimer("mcp-client-heartbeat-wheel", TICK_MILLIS, TimeUnit.MILLISECONDS, WHEEL_SIZE);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        wheelTimer.stop();
+    }
+
+    /**
+     * 登记客户端心跳。首次心跳在一个心跳间隔内随机到期。
+     *
+     * @param clientInfo 客户端信息
+     * @param registered 判断客户端是否仍在注册表中，返回 {@code false} 时停止心跳
+     * @param onExpired  ping 连续失败或空闲超时时的处理，负责把客户端从注册表中移除
+     */
+    public void schedule(McpClientInfo clientInfo, Predicate<McpClientInfo> registered, Consumer<McpClientInfo> onExpired) {
+        long intervalMillis = mcpClientProperties.getHeartbeatInterval();
+        HeartbeatState state = new HeartbeatState(clientInfo, registered, onExpired);
+        wheelTimer.newTimeout(() -> heartbeat(state), ThreadLocalRandom.current().nextLong(1, intervalMillis + 1), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 执行一次心跳，根据客户端的活跃情况决定是否 ping 以及下一次心跳的间隔：
+     * 1. 空闲超时的客户端直接移除，不再 ping；
+     * 2. 一个心跳间隔内被访问过的客户端视为存活，跳过 ping，按基础间隔登记下一次心跳；
+     * 3. 空闲但 ping 成功的客户端，每连续成功一次间隔翻倍，最长不超过 {@code heartbeatMaxInterval}，也不会晚于空闲超时的时间点；
+     * 4. ping 失败的客户端按 {@code heartbeatFailureRetryInterval} 快速重试，连续失败 {@code heartbeatMaxFailures} 次后移除。
+     */
+    private void heartbeat(HeartbeatState state) {
+        McpClientInfo clientInfo = state.clientInfo;
+        if (!clientInfo.isValid() || !state.registered.test(clientInfo)) {
+            log.debug("【MCP HEARTBEAT】 客户端 {} 已移除, 停止心跳", clientInfo.getClientName());
+            return;
+        }
+        if (clientInfo.checkIdle()) {
+            expire(state, "空闲超时");
+            return;
+        }
+        long intervalMillis = mcpClientProperties.getHeartbeatInterval();
+        if (clientInfo.getIdleMillis() < intervalMillis) {
+            log.debug("【MCP HEARTBEAT】 客户端 {} 最近被访问过, 跳过 ping", clientInfo.getClientName());
+            state.successes = 0;
+            state.failures = 0;
+            reschedule(state, intervalMillis);
+            return;
+        }
+        clientInfo.pingAsync(TimeUnit.SECONDS.toMillis(McpCommonTask.MCP_PING_TIMEOUT_SECONDS))
+                .whenComplete((healthy, e) -> {
+                    if (Boolean.TRUE.equals(healthy)) {
+                        state.failures = 0;
+                        state.successes = Math.min(state.successes + 1, MAX_BACKOFF_SHIFT);
+                        long backoffMillis = Math.min(intervalMillis << state.successes, mcpClientProperties.getHeartbeatMaxInterval());
+                        long idleDeadlineMillis = clientInfo.getIdleTimeoutMillis() - clientInfo.getIdleMillis() + TICK_MILLIS;
+                        log.debug("【MCP HEARTBEAT】 客户端 {} 心跳检查健康, 连续成功 {} 次", clientInfo.getClientName(), state.successes);
+                        reschedule(state, Math.max(Math.min(backoffMillis, idleDeadlineMillis), TICK_MILLIS));
+                        return;
+                    }
+                    state.successes = 0;
+                    state.failures++;
+                    if (state.failures >= mcpClientProperties.getHeartbeatMaxFailures()) {
+                        expire(state, "连续 " + state.failures + " 次心跳失败");
+                        return;
+                    }
+                    log.warn("【MCP HEARTBEAT】 客户端 {} 心跳失败 {} 次, 稍后重试", clientInfo.getClientName(), state.failures);
+                    reschedule(state, mcpClientProperties.getHeartbeatFailureRetryInterval());
+                });
+    }
+
+    private void expire(HeartbeatState state, String reason) {
+        if (state.registered.test(state.clientInfo)) {
+            log.info("【MCP HEARTBEAT】 客户端 {} {}, 移除客户端", state.clientInfo.getClientName(), reason);
+            state.onExpired.accept(state.clientInfo);
+        }
+    }
+
+    private void reschedule(HeartbeatState state, long delayMillis) {
+        wheelTimer.newTimeout(() -> heartbeat(state), withJitter(delayMillis), TimeUnit.MILLISECONDS);
+    }
+
+    private long withJitter(long delayMillis) {
+        long jitterMillis = (long) (delayMillis * Math.max(mcpClientProperties.getHeartbeatJitterRatio(), 0D));
+        if (jitterMillis <= 0) {
+            return delayMillis;
+        }
+        return delayMillis - jitterMillis + ThreadLocalRandom.current().nextLong(2 * jitterMillis + 1);
+    }
+
+    /**
+     * 单个客户端的心跳状态。同一客户端同一时刻只有一次心跳在执行，状态只会被顺序访问。
+     */
+    private static class HeartbeatState {
+        private final McpClientInfo clientInfo;
+        private final Predicate<McpClientInfo> registered;
+        private final Consumer<McpClientInfo> onExpired;
+        //连续 ping 成功次数 决定退避倍数
+        private int successes;
+        //连续 ping 失败次数
+        private int failures;
+
+        private HeartbeatState(McpClientInfo clientInfo, Predicate<McpClientInfo> registered, Consumer<McpClientInfo> onExpired) {
+            this.clientInfo = clientInfo;
+            this.registered = registered;
+            this.onExpired = onExpired;
+        }
+    }
+}
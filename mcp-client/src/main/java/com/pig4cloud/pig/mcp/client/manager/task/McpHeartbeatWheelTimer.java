@@ -0,0 +1,209 @@
+package com.pig4cloud.pig.mcp.client.manager.task;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 心跳时间轮。
+ * <p>
+ * 由一个工作线程按固定刻度推进，每个刻度只处理当前槽位中到期的任务，
+ * 添加任务只是入队，与已登记的任务数量无关，因此心跳的调度成本不会随客户端数量增长。
+ * 延迟超过一圈的任务通过剩余圈数处理（与 Netty HashedWheelTimer 相同），心跳间隔为分钟级，
+ * 绝大多数任务都落在第一圈内，不需要再分层。
+ * <p>
+ * 到期任务直接在工作线程中执行，任务只能做分发（提交 ping、重新登记），不能阻塞。
+ */
+@Slf4j
+public class McpHeartbeatWheelTimer {
+
+    private final long tickNanos;
+
+    private final int mask;
+
+    private final ArrayDeque<WheelTimeout>[] wheel;
+
+    //新登记的任务 由工作线程在每个刻度转移到对应槽位
+    private final Queue<WheelTimeout> pendingTimeouts = new ConcurrentLinkedQueue<>();
+
+    //时钟 测试时可替换为手动推进的时钟
+    private final LongSupplier nanoClock;
+
+    //不启动工作线程时为 null 由调用方手动推进刻度
+    private final Thread workerThread;
+
+    private volatile boolean running = true;
+
+    private final long startTime;
+
+    private long tick;
+
+    /**
+     * @param threadName   工作线程名称
+     * @param tickDuration 刻度时长
+     * @param unit         刻度时长单位
+     * @param wheelSize    槽位数量，向上取整为 2 的幂
+     */
+    public McpHeartbeatWheelTimer(String threadName, long tickDuration, TimeUnit unit, int wheelSize) {
+        this(threadName, unit.toNanos(tickDuration), wheelSize, System::nanoTime);
+    }
+
+    /**
+     * @param threadName 工作线程名称，为 {@code null} 时不启动工作线程，由调用方通过 {@link #processTick()} 推进
+     * @param tickNanos  刻度时长 单位纳秒
+     * @param wheelSize  槽位数量，向上取整为 2 的幂
+     * @param nanoClock  纳秒时钟
+     */
+    @SuppressWarnings("unchecked")
+    McpHeartbeatWheelTimer(String threadName, long tickNanos, int wheelSize, LongSupplier nanoClock) {
+        int normalizedWheelSize = Integer.highestOneBit(Math.max(wheelSize, 2) - 1) << 1;
+        this.tickNanos = tickNanos;
+        this.mask = normalizedWheelSize - 1;
+        this.wheel = new ArrayDeque[normalizedWheelSize];
+        for (int i = 0; i < normalizedWheelSize; i++) {
+            wheel[i] = new ArrayDeque<>();
+        }
+        this.nanoClock = nanoClock;
+        this.startTime = nanoClock.getAsLong();
+        if (threadName == null) {
+            this.workerThread = null;
+            return;
+        }
+        this.workerThread = new Thread(this::work, threadName);
+        this.workerThread.setDaemon(true);
+        this.workerThread.start();
+    }
+
+    /**
+     * 登记一个延迟任务。
+     *
+     * @param task  到期后在工作线程中执行的任务
+     * @param delay 延迟时间
+     * @param unit  延迟时间单位
+     * @return 任务句柄，可用于取消任务；定时器已停止时返回已取消的句柄
+     */
+    public WheelTimeout newTimeout(Runnable task, long delay, TimeUnit unit) {
+        long deadline = nanoClock.getAsLong() - startTime + unit.toNanos(Math.max(delay, 0L));
+        WheelTimeout timeout = new WheelTimeout(task, deadline);
+        if (!running) {
+            timeout.cancel();
+            return timeout;
+        }
+        pendingTimeouts.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * 停止工作线程，未到期的任务不再执行。
+     */
+    public void stop() {
+        running = false;
+        if (workerThread != null) {
+            workerThread.interrupt();
+        }
+    }
+
+    private void work() {
+        while (running) {
+            if (!waitForNextTick()) {
+                return;
+            }
+            processTick();
+        }
+    }
+
+    /**
+     * 处理当前刻度：把新登记的任务放入槽位，执行当前槽位中到期的任务，然后前进一个刻度。
+     * 只能由工作线程调用；未启动工作线程时由调用方按时钟推进调用。
+     */
+    void processTick() {
+        if (!running) {
+            return;
+        }
+        transferPendingTimeouts();
+        expireTimeouts(wheel[(int) (tick & mask)]);
+        tick++;
+    }
+
+    private boolean waitForNextTick() {
+        long deadline = tickNanos * (tick + 1);
+        while (true) {
+            long sleepNanos = deadline - (nanoClock.getAsLong() - startTime);
+            if (sleepNanos <= 0) {
+                return true;
+            }
+            try {
+                TimeUnit.NANOSECONDS.sleep(sleepNanos);
+            } catch (InterruptedException e) {
+                if (!running) {
+                    return false;
+                }
+            }
+        }
+    }
+
+    private void transferPendingTimeouts() {
+        WheelTimeout timeout;
+        while ((timeout = pendingTimeouts.poll()) != null) {
+            if (timeout.cancelled) {
+                continue;
+            }
+            long calculated = timeout.deadline / tickNanos;
+            timeout.remainingRounds = (calculated - tick) / wheel.length;
+            // 已经过期的任务放到当前槽位，本刻度执行
+            long ticks = Math.max(calculated, tick);
+            wheel[(int) (ticks & mask)].add(timeout);
+        }
+    }
+
+    private void expireTimeouts(ArrayDeque<WheelTimeout> bucket) {
+        Iterator<WheelTimeout> iterator = bucket.iterator();
+        while (iterator.hasNext()) {
+            WheelTimeout timeout = iterator.next();
+            if (timeout.cancelled) {
+                iterator.remove();
+                continue;
+            }
+            if (timeout.remainingRounds > 0) {
+                timeout.remainingRounds--;
+                continue;
+            }
+            iterator.remove();
+            try {
+                timeout.task.run();
+            } catch (Throwable e) {
+                log.error("【MCP HEARTBEAT】 时间轮任务执行异常", e);
+            }
+        }
+    }
+
+    /**
+     * 时间轮中的单个延迟任务。除取消标记外只由工作线程访问。
+     */
+    public static class WheelTimeout {
+        private final Runnable task;
+        private final long deadline;
+        private long remainingRounds;
+        private volatile boolean cancelled;
+
+        private WheelTimeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * 取消任务。已取消的任务在所在槽位下次被处理时移除，不会执行。
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+}
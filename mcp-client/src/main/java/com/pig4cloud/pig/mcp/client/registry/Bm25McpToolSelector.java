@@ -0,0 +1,155 @@
+package com.pig4cloud.pig.mcp.client.registry;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.springframework.ai.model.function.FunctionCallback;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 基于 BM25 的本地工具选择器
+ * <p>
+ * 以工具名称和描述为文档，用户最新的问题为查询，按 BM25 得分保留前 K 个工具，不依赖任何网络服务。
+ * 英文按非字母数字字符、驼峰和下划线切词，中文按单字和相邻二字切词，不需要分词词典。
+ * <p>
+ * 每个工具的分词结果缓存在索引中，只有工具首次出现或名称、描述发生变化时才重新分词，
+ * 长时间未被使用的工具自动从索引中移除。IDF 和平均文档长度按本次请求的工具集合计算，
+ * 不同智能体的工具集合互不影响。
+ */
+@Slf4j
+@Component
+public class Bm25McpToolSelector implements McpToolSelector {
+    /**
+     * BM25 词频饱和参数
+     */
+    private static final double K1 = 1.2D;
+
+    /**
+     * BM25 文档长度归一化参数
+     */
+    private static final double B = 0.75D;
+
+    //工具分词索引 <工具名称,ToolDocument>
+    private final Cache<String, ToolDocument> documentIndex = CacheBuilder.newBuilder()
+            .maximumSize(10000)
+            .expireAfterAccess(1, TimeUnit.HOURS)
+            .build();
+
+    @Override
+    public <T extends FunctionCallback> List<T> select(String query, List<T> tools, int topK) {
+        if (topK <= 0 || tools.size() <= topK || !StringUtils.hasText(query)) {
+            return tools;
+        }
+        Set<String> queryTerms = new LinkedHashSet<>(tokenize(query));
+        List<ToolDocument> documents = tools.stream().map(this::indexDocument).toList();
+        double avgLength = documents.stream().mapToInt(ToolDocument::length).average().orElse(1D);
+        double[] scores = new double[documents.size()];
+        for (String term : queryTerms) {
+            int documentFrequency = (int) documents.stream().filter(document -> document.termFrequencies().containsKey(term)).count();
+            if (documentFrequency == 0) {
+                continue;
+            }
+            double idf = Math.log(1D + (documents.size() - documentFrequency + 0.5D) / (documentFrequency + 0.5D));
+            for (int i = 0; i < documents.size(); i++) {
+                ToolDocument document = documents.get(i);
+                Integer termFrequency = document.termFrequencies().get(term);
+                if (termFrequency != null) {
+                    double norm = K1 * (1D - B + B * document.length() / Math.max(avgLength, 1D));
+                    scores[i] += idf * termFrequency * (K1 + 1D) / (termFrequency + norm);
+                }
+            }
+        }
+        if (IntStream.range(0, scores.length).noneMatch(i -> scores[i] > 0D)) {
+            // 问题与所有工具都不相关时无法判断取舍，保留全部工具
+            log.debug("【MCP TOOL SELECTOR】 问题与 {} 个工具均不匹配, 保留全部工具", tools.size());
+            return tools;
+        }
+        // 选中的工具按原有顺序返回，相同工具集合的提示词保持稳定
+        List<T> selected = IntStream.range(0, tools.size()).boxed()
+                .sorted(Comparator.<Integer>comparingDouble(i -> scores[i]).reversed())
+                .limit(topK)
+                .sorted()
+                .map(tools::get)
+                .toList();
+        log.debug("【MCP TOOL SELECTOR】 从 {} 个工具中选出 {} 个: {}", tools.size(), selected.size(), selected.stream().map(FunctionCallback::getName).toList());
+        return selected;
+    }
+
+    /**
+     * 获取工具的分词结果，工具首次出现或名称、描述变化时重新分词并更新索引。
+     */
+    private ToolDocument indexDocument(FunctionCallback tool) {
+        String name = tool.getName();
+        String description = tool.getDescription() == null ? "" : tool.getDescription();
+        ToolDocument document = documentIndex.getIfPresent(name);
+        if (document != null && document.description().equals(description)) {
+            return document;
+        }
+        List<String> terms = tokenize(name + " " + description);
+        Map<String, Integer> termFrequencies = new HashMap<>();
+        terms.forEach(term -> termFrequencies.merge(term, 1, Integer::sum));
+        document = new ToolDocument(description, termFrequencies, terms.size());
+        documentIndex.put(name, document);
+        return document;
+    }
+
+    /**
+     * 切词：英文及数字按非字母数字字符、驼峰边界切分并转小写，中文输出单字和相邻二字。
+     */
+    private static List<String> tokenize(String text) {
+        List<String> terms = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        char previousHan = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.UnicodeScript.of(c) == Character.UnicodeScript.HAN) {
+                flushWord(word, terms);
+                terms.add(String.valueOf(c));
+                if (previousHan != 0) {
+                    terms.add(new String(new char[]{previousHan, c}));
+                }
+                previousHan = c;
+                continue;
+            }
+            previousHan = 0;
+            if (!Character.isLetterOrDigit(c)) {
+                flushWord(word, terms);
+                continue;
+            }
+            if (Character.isUpperCase(c) && i > 0 && Character.isLowerCase(text.charAt(i - 1))) {
+                flushWord(word, terms);
+            }
+            word.append(Character.toLowerCase(c));
+        }
+        flushWord(word, terms);
+        return terms;
+    }
+
+    private static void flushWord(StringBuilder word, List<String> terms) {
+        if (word.length() > 1) {
+            terms.add(word.toString());
+        }
+        word.setLength(0);
+    }
+
+    /**
+     * 单个工具的分词结果
+     *
+     * @param description     分词时的工具描述，用于判断工具是否变化
+     * @param termFrequencies 词频
+     * @param length          文档长度（词数）
+     */
+    private record ToolDocument(String description, Map<String, Integer> termFrequencies, int length) {
+    }
+}
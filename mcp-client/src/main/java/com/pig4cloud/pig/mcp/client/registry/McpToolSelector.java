@@ -0,0 +1,25 @@
+package com.pig4cloud.pig.mcp.client.registry;
+
+import org.springframework.ai.model.function.FunctionCallback;
+
+import java.util.List;
+
+/**
+ * 工具选择器
+ * <p>
+ * 在调用大模型之前，根据用户最新的问题从智能体的全部工具中挑选最相关的一部分，
+ * 减少提示词中的工具定义数量。替换该接口的 Spring Bean 即可更换排序算法。
+ */
+public interface McpToolSelector {
+
+    /**
+     * 挑选与问题最相关的工具。
+     *
+     * @param query 用户最新的问题，为空时不做选择
+     * @param tools 全部工具
+     * @param topK  最多保留的工具数量，小于等于0时不做选择
+     * @param <T>   工具回调类型
+     * @return 选中的工具，保持原有顺序
+     */
+    <T extends FunctionCallback> List<T> select(String query, List<T> tools, int topK);
+}
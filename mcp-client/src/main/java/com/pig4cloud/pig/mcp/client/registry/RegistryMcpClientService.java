@@ -1,8 +1,10 @@
 package com.pig4cloud.pig.mcp.client.registry;
 
+import com.pig4cloud.pig.mcp.client.chat.CustomAsyncMcpToolCallback;
 import com.pig4cloud.pig.mcp.common.params.ChatRequestParams;
 import org.springframework.ai.model.function.FunctionCallback;
 import org.springframework.ai.tool.ToolCallbackProvider;
+import reactor.core.publisher.Mono;
 
 import java.util.List;
 
@@ -10,4 +12,8 @@ public interface RegistryMcpClientService {
     ToolCallbackProvider[] getToolCallbackProvider(Boolean stream,String agentId,List<ChatRequestParams.McpConfig> mcpConfigs);
 
     List<FunctionCallback> getFunctionCallbacks(Boolean stream,String agentId,List<ChatRequestParams.McpConfig> mcpConfigs);
+
+    List<FunctionCallback> getFunctionCallbacks(Boolean stream, String agentId, List<ChatRequestParams.McpConfig> mcpConfigs, String userQuery);
+
+    Mono<List<CustomAsyncMcpToolCallback>> getAsyncToolCallbacks(String agentId, List<ChatRequestParams.McpConfig> mcpConfigs, String userQuery);
 }
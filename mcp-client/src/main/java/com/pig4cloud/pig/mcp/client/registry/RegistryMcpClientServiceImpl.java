@@ -1,25 +1,38 @@
 package com.pig4cloud.pig.mcp.client.registry;
 
 import cn.hutool.core.collection.CollectionUtil;
+import com.pig4cloud.pig.mcp.client.chat.CustomAsyncMcpToolCallback;
+import com.pig4cloud.pig.mcp.client.chat.CustomAsyncMcpToolCallbackProvider;
 import com.pig4cloud.pig.mcp.client.chat.CustomSyncMcpToolCallbackProvider;
 import com.pig4cloud.pig.mcp.client.enums.McpClientType;
 import com.pig4cloud.pig.mcp.client.manager.ManagerMcpAsyncClientService;
 import com.pig4cloud.pig.mcp.client.manager.ManagerMcpSyncClientService;
 import com.pig4cloud.pig.mcp.client.manager.model.McpClientInfo;
+import com.pig4cloud.pig.mcp.client.manager.task.McpCommonTask;
 import com.pig4cloud.pig.mcp.common.bean.RestResultCode;
 import com.pig4cloud.pig.mcp.common.exception.RestCustomException;
 import com.pig4cloud.pig.mcp.common.params.ChatRequestParams;
+import com.pig4cloud.pig.mcp.common.properties.McpClientProperties;
 import com.pig4cloud.pig.mcp.common.util.R;
-import io.modelcontextprotocol.client.McpSyncClient;
+import io.modelcontextprotocol.client.McpAsyncClient;
+import jakarta.annotation.Resource;
 import org.springframework.ai.model.function.FunctionCallback;
 import org.springframework.ai.tool.ToolCallbackProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.time.Duration;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
 
@@ -31,6 +44,12 @@ public class RegistryMcpClientServiceImpl implements RegistryMcpClientService {
     private ManagerMcpSyncClientService managerMcpSyncClientService; // 注入 ManagerMcpSyncClientService，用于管理同步 MCP 客户端
     @Autowired
     private ManagerMcpAsyncClientService managerMcpAsyncClientService; // 注入 ManagerMcpAsyncClientService，用于管理异步 MCP 客户端
+    @Autowired
+    private McpClientProperties mcpClientProperties; // 注入 McpClientProperties，用于获取工具缓存等配置
+    @Resource(name = "mcpToolDiscoveryThreadPool")
+    private ExecutorService mcpToolDiscoveryThreadPool; // 注入线程池，用于并发获取各客户端的工具列表
+    @Autowired
+    private McpToolSelector mcpToolSelector; // 注入 McpToolSelector，用于按问题挑选相关工具
 
 
     /**
@@ -48,30 +67,27 @@ public class RegistryMcpClientServiceImpl implements RegistryMcpClientService {
         if (CollectionUtil.isEmpty(mcpConfigs)) {
             return new ToolCallbackProvider[0];
         }
-        // 遍历 MCP 配置列表
-        for (ChatRequestParams.McpConfig mcpConfig : mcpConfigs) {
-            // 如果 MCP 服务器类型是 SSE
-            if (McpClientType.SSE.getName().equals(mcpConfig.type())) {
-                doRegisterHttpClientSseClient(stream, agentId, mcpConfig); // 注册 HTTP SSE 客户端
-            }
-            // 如果 MCP 服务器类型是 Stdio
-            else if (McpClientType.STDIO.getName().equals(mcpConfig.type())) {
-                doRegisterStdioClient(stream, agentId, mcpConfig); // 注册 Stdio 客户端
-            }
-            // 否则抛出异常
-            else {
-                throw new RestCustomException(R.generic(RestResultCode.REST_COMMON_INVALID_PARAMETER.getCode(), "MCP SERVER参数配置错误"));
-            }
-        }
+        // 校验类型并确定客户端名称
+        Map<String, ChatRequestParams.McpConfig> mcpConfigMap = buildMcpConfigMap(mcpConfigs);
+        // 并发注册并初始化所有缺失或不健康的客户端，整批共享一个截止时间
+        managerMcpSyncClientService.registryAndInitMcpSyncClients(agentId, mcpConfigMap, McpCommonTask.MCP_CLIENT_INIT_SECONDS);
         // 获取指定智能体 ID 的 MCP 客户端 Map
         ConcurrentHashMap<String, McpClientInfo> mcpSyncClientMapByAgentId = managerMcpSyncClientService.getMcpClientMapByAgentId(agentId);
         ConcurrentHashMap<String, McpClientInfo> mcpAsyncClientMapByAgentId = managerMcpAsyncClientService.getMcpClientMapByAgentId(agentId);
         // 如果 MCP 同步客户端 Map 不为空
         if (mcpSyncClientMapByAgentId != null && !mcpSyncClientMapByAgentId.isEmpty()) {
-            // 获取 MCP 同步客户端列表
-            List<McpSyncClient> mcpSyncClientList = mcpSyncClientMapByAgentId.values().stream().map(McpClientInfo::getMcpSyncClient).collect(Collectors.toList());
-            // 返回 CustomSyncMcpToolCallbackProvider 数组
-            return new ToolCallbackProvider[]{new CustomSyncMcpToolCallbackProvider(mcpSyncClientList)};
+            // 获取 MCP 同步客户端，客户端名称为当前智能体配置中的名称
+            Map<String, McpClientInfo> mcpClientInfoMap = new LinkedHashMap<>(mcpSyncClientMapByAgentId);
+            // 工具结果缓存有效期按当前智能体的配置设置，不影响共用同一客户端的其他智能体
+            Map<String, Map<String, Long>> toolCacheTtls = new HashMap<>();
+            mcpConfigMap.forEach((clientName, mcpConfig) -> {
+                if (mcpConfig.toolCacheTtl() != null && !mcpConfig.toolCacheTtl().isEmpty()) {
+                    toolCacheTtls.put(clientName, mcpConfig.toolCacheTtl());
+                }
+            });
+            // 返回 CustomSyncMcpToolCallbackProvider 数组，工具列表优先从客户端缓存中获取，缓存未命中的客户端并发获取
+            long toolsCacheTtlMillis = TimeUnit.SECONDS.toMillis(mcpClientProperties.getToolsCacheTtl());
+            return new ToolCallbackProvider[]{new CustomSyncMcpToolCallbackProvider(mcpClientInfoMap, toolCacheTtls, toolsCacheTtlMillis, mcpToolDiscoveryThreadPool, mcpClientProperties.getToolsDiscoveryTimeout())};
         }
 //        if (mcpSyncClientMapByAgentId != null && !mcpSyncClientMapByAgentId.isEmpty()) {
 //            List<McpSyncClient> mcpSyncClientList = mcpSyncClientMapByAgentId.values().stream().map(McpClientInfo::getMcpSyncClient).collect(Collectors.toList());
@@ -118,41 +134,84 @@ public class RegistryMcpClientServiceImpl implements RegistryMcpClientService {
     }
 
     /**
-     * 注册 HTTP 客户端
+     * 获取工具回调，并按用户最新的问题保留最相关的 {@code toolSelectionTopK} 个工具。
      *
      * @param stream     是否是流式请求
      * @param agentId    智能体 ID
-     * @param mcpConfig MCP 配置
+     * @param mcpConfigs MCP 配置列表
+     * @param userQuery  用户最新的问题
+     * @return 选中的 FunctionCallback 列表
      */
-    private void doRegisterHttpClientSseClient(Boolean stream, String agentId, ChatRequestParams.McpConfig mcpConfig) {
-        // 注册并初始化 MCP 同步客户端
-        managerMcpSyncClientService.registryAndInitMcpSyncClient(agentId, mcpConfig.url(), mcpConfig);
-//        if (!stream) {
-//            managerMcpSyncClientService.registryAndInitMcpSyncClient(agentId, mcpConfig.url(), mcpConfig);
-//        } else {
-//            managerMcpAsyncClientService.registryAndInitMcpAsyncClient(agentId, mcpConfig.name(), mcpConfig);
-//        }
-
+    @Override
+    public List<FunctionCallback> getFunctionCallbacks(Boolean stream, String agentId, List<ChatRequestParams.McpConfig> mcpConfigs, String userQuery) {
+        List<FunctionCallback> tools = this.getFunctionCallbacks(stream, agentId, mcpConfigs);
+        return mcpToolSelector.select(userQuery, tools, mcpClientProperties.getToolSelectionTopK());
     }
 
+    /**
+     * 以非阻塞方式获取异步工具回调
+     * <p>
+     * 注册、初始化和工具发现全部以 {@link Mono}/{@link Flux} 组合，不占用线程池线程等待，
+     * 返回的工具回调均为 {@link CustomAsyncMcpToolCallback}，可通过 {@link CustomAsyncMcpToolCallback#callAsync(String)} 非阻塞调用。
+     *
+     * @param agentId    智能体 ID
+     * @param mcpConfigs MCP 配置列表
+     * @param userQuery  用户最新的问题，用于挑选相关工具
+     * @return 工具回调列表
+     * @throws RestCustomException MCP SERVER参数配置错误
+     */
+    @Override
+    public Mono<List<CustomAsyncMcpToolCallback>> getAsyncToolCallbacks(String agentId, List<ChatRequestParams.McpConfig> mcpConfigs, String userQuery) {
+        // 如果 MCP 配置列表为空，则返回空列表
+        if (CollectionUtil.isEmpty(mcpConfigs)) {
+            return Mono.just(List.of());
+        }
+        Map<String, ChatRequestParams.McpConfig> mcpConfigMap = buildMcpConfigMap(mcpConfigs);
+        return managerMcpAsyncClientService.registryAndInitMcpAsyncClients(agentId, mcpConfigMap, Duration.ofSeconds(McpCommonTask.MCP_CLIENT_INIT_SECONDS))
+                .then(Mono.defer(() -> {
+                    ConcurrentHashMap<String, McpClientInfo> mcpAsyncClientMapByAgentId = managerMcpAsyncClientService.getMcpClientMapByAgentId(agentId);
+                    if (mcpAsyncClientMapByAgentId == null || mcpAsyncClientMapByAgentId.isEmpty()) {
+                        return Mono.just(List.<CustomAsyncMcpToolCallback>of());
+                    }
+                    List<McpAsyncClient> mcpAsyncClients = mcpConfigMap.keySet().stream()
+                            .map(mcpAsyncClientMapByAgentId::get)
+                            .filter(Objects::nonNull)
+                            .map(McpClientInfo::getMcpAsyncClient)
+                            .toList();
+                    // 小于等于0表示不超时，由 CustomAsyncMcpToolCallbackProvider 处理，与同步路径一致
+                    Duration discoveryTimeout = Duration.ofMillis(mcpClientProperties.getToolsDiscoveryTimeout());
+                    return new CustomAsyncMcpToolCallbackProvider((mcpClient, tool) -> true, mcpAsyncClients, discoveryTimeout, mcpClientProperties.getToolSchemaMaxChars())
+                            .asyncToolCallbacks()
+                            .cast(CustomAsyncMcpToolCallback.class)
+                            .collectList()
+                            .map(tools -> mcpToolSelector.select(userQuery, tools, mcpClientProperties.getToolSelectionTopK()));
+                }));
+    }
 
     /**
-     * 注册  Stdio 客户端
+     * 校验 MCP 配置类型并确定客户端名称
      *
-     * @param stream     是否是流式请求
-     * @param agentId   智能体 ID
-     * @param mcpConfig MCP 配置
+     * @param mcpConfigs MCP 配置列表
+     * @return 客户端名称到 MCP 配置的映射，SSE 类型客户端名称为 url，Stdio 类型客户端名称为 name
+     * @throws RestCustomException MCP SERVER参数配置错误
      */
-    private void doRegisterStdioClient(Boolean stream, String agentId, ChatRequestParams.McpConfig mcpConfig) {
-        // 查找 Stdio 客户端名称
-        String stdioMcpServerName = mcpConfig.name();
-        // 注册并初始化 MCP 同步客户端
-        managerMcpSyncClientService.registryAndInitMcpSyncClient(agentId, stdioMcpServerName, mcpConfig);
-//        // 注册并初始化客户端
-//        if (!stream) {
-//            managerMcpSyncClientService.registryAndInitMcpSyncClient(agentId, stdioMcpServerName, mcpConfig);
-//        } else {
-//            managerMcpAsyncClientService.registryAndInitMcpAsyncClient(agentId, stdioMcpServerName, mcpConfig);
-//        }
+    private Map<String, ChatRequestParams.McpConfig> buildMcpConfigMap(List<ChatRequestParams.McpConfig> mcpConfigs) {
+        // 遍历 MCP 配置列表，校验类型并确定客户端名称
+        Map<String, ChatRequestParams.McpConfig> mcpConfigMap = new LinkedHashMap<>();
+        for (ChatRequestParams.McpConfig mcpConfig : mcpConfigs) {
+            // 如果 MCP 服务器类型是 SSE，客户端名称为 url
+            if (McpClientType.SSE.getName().equals(mcpConfig.type())) {
+                mcpConfigMap.put(mcpConfig.url(), mcpConfig);
+            }
+            // 如果 MCP 服务器类型是 Stdio，客户端名称为 name
+            else if (McpClientType.STDIO.getName().equals(mcpConfig.type())) {
+                mcpConfigMap.put(mcpConfig.name(), mcpConfig);
+            }
+            // 否则抛出异常
+            else {
+                throw new RestCustomException(R.generic(RestResultCode.REST_COMMON_INVALID_PARAMETER.getCode(), "MCP SERVER参数配置错误"));
+            }
+        }
+        return mcpConfigMap;
     }
 }
@@ -43,6 +43,8 @@ public class McpToolServiceImpl implements McpToolService {
         }
         McpSyncClient mcpSyncClient = clientInfo.getMcpSyncClient();
         McpSchema.ListToolsResult listToolsResult = mcpSyncClient.listTools();
+        // 顺带刷新客户端的工具缓存
+        clientInfo.refreshToolCallbacks(listToolsResult.tools());
         return new McpToolInfo(mcpConfig.name(), listToolsResult);
     }
 
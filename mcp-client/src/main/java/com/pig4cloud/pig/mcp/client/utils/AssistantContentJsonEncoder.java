@@ -0,0 +1,124 @@
+package com.pig4cloud.pig.mcp.client.utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * 助手消息 JSON 编码器
+ * <p>
+ * 流式问答中每个助手消息事件的数据都是固定的 {@code {"content":"..."}}，
+ * 通用做法要创建 {@code ChatResponseModel}、经 Jackson 序列化为字符串，再由消息转换器转成字节。
+ * 这里直接把文本按 JSON 规则转义并以 UTF-8 编码写入复用的字节缓冲区，再写到输出流，
+ * 每个事件不再产生中间对象和字符串。输出与 Jackson 默认配置一致：转义双引号、反斜杠、控制字符和代理字符，其余非 ASCII 字符原样输出。
+ */
+public class AssistantContentJsonEncoder {
+
+    private static final byte[] PREFIX = "{\"content\":\"".getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] SUFFIX = "\"}".getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * 单个缓冲区大小，超出的内容分段写出
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * 单个字符编码后的最大字节数（控制字符和代理字符的 unicode 转义为 6 字节），留出余量
+     */
+    private static final int MAX_CHAR_BYTES = 8;
+
+    //缓冲区池 池空时临时创建 池满时丢弃
+    private static final ArrayBlockingQueue<byte[]> BUFFER_POOL = new ArrayBlockingQueue<>(64);
+
+    private AssistantContentJsonEncoder() {
+    }
+
+    /**
+     * 把 {@code {"content":"<content>"}} 写入输出流
+     *
+     * @param content 助手消息文本
+     * @param out     输出流
+     * @throws IOException 写出失败
+     */
+    public static void write(String content, OutputStream out) throws IOException {
+        byte[] buffer = BUFFER_POOL.poll();
+        if (buffer == null) {
+            buffer = new byte[BUFFER_SIZE];
+        }
+        try {
+            System.arraycopy(PREFIX, 0, buffer, 0, PREFIX.length);
+            int pos = PREFIX.length;
+            int length = content.length();
+            for (int i = 0; i < length; i++) {
+                if (pos > BUFFER_SIZE - MAX_CHAR_BYTES) {
+                    out.write(buffer, 0, pos);
+                    pos = 0;
+                }
+                char c = content.charAt(i);
+                if (c < 0x80) {
+                    pos = writeAscii(c, buffer, pos);
+                } else if (c < 0x800) {
+                    buffer[pos++] = (byte) (0xC0 | (c >> 6));
+                    buffer[pos++] = (byte) (0x80 | (c & 0x3F));
+                } else if (Character.isSurrogate(c)) {
+                    // 与 Jackson 一致，代理字符（无论是否成对）都按 unicode 转义输出
+                    pos = writeUnicodeEscape(c, buffer, pos);
+                } else {
+                    buffer[pos++] = (byte) (0xE0 | (c >> 12));
+                    buffer[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    buffer[pos++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+            if (pos > BUFFER_SIZE - SUFFIX.length) {
+                out.write(buffer, 0, pos);
+                pos = 0;
+            }
+            System.arraycopy(SUFFIX, 0, buffer, pos, SUFFIX.length);
+            out.write(buffer, 0, pos + SUFFIX.length);
+        } finally {
+            BUFFER_POOL.offer(buffer);
+        }
+    }
+
+    private static int writeAscii(char c, byte[] buffer, int pos) {
+        if (c == '"' || c == '\\') {
+            buffer[pos++] = '\\';
+            buffer[pos++] = (byte) c;
+            return pos;
+        }
+        if (c >= 0x20) {
+            buffer[pos++] = (byte) c;
+            return pos;
+        }
+        buffer[pos++] = '\\';
+        switch (c) {
+            case '\b' -> buffer[pos++] = 'b';
+            case '\t' -> buffer[pos++] = 't';
+            case '\n' -> buffer[pos++] = 'n';
+            case '\f' -> buffer[pos++] = 'f';
+            case '\r' -> buffer[pos++] = 'r';
+            default -> {
+                buffer[pos++] = 'u';
+                buffer[pos++] = '0';
+                buffer[pos++] = '0';
+                buffer[pos++] = HEX[c >> 4];
+                buffer[pos++] = HEX[c & 0xF];
+            }
+        }
+        return pos;
+    }
+
+    private static int writeUnicodeEscape(char c, byte[] buffer, int pos) {
+        buffer[pos++] = '\\';
+        buffer[pos++] = 'u';
+        buffer[pos++] = HEX[c >> 12];
+        buffer[pos++] = HEX[(c >> 8) & 0xF];
+        buffer[pos++] = HEX[(c >> 4) & 0xF];
+        buffer[pos++] = HEX[c & 0xF];
+        return pos;
+    }
+}
@@ -0,0 +1,114 @@
+package com.pig4cloud.pig.mcp.client.utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import io.modelcontextprotocol.spec.McpSchema;
+import org.springframework.ai.mcp.McpToolUtils;
+import org.springframework.ai.model.ModelOptionsUtils;
+import org.springframework.ai.tool.definition.ToolDefinition;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * MCP 工具定义构建工具类
+ * <p>
+ * Spring AI 的 MCP 工具回调每次调用 {@code getToolDefinition()} 都会重新序列化工具的 inputSchema，
+ * 每次问答都要为所有工具重复一遍。这里在工具发现时构建一次工具定义，schema JSON 经过驻留，
+ * 多个智能体、多个客户端连接同一服务时共用同一个字符串实例。
+ * <p>
+ * 配置了 schema 长度上限时，超出上限的 schema 依次去掉 examples/title 等示例性字段、各属性的 description，
+ * 减少提示词中工具定义占用的 token。字段名为 description 的属性本身不会被去掉。
+ */
+@Slf4j
+public class McpToolDefinitionUtils {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    //schema JSON 驻留池 弱引用 不再被工具定义引用的 schema 可被回收
+    private static final Interner<String> SCHEMA_INTERNER = Interners.newWeakInterner();
+
+    //第一轮去掉的示例性字段
+    private static final Set<String> EXAMPLE_KEYWORDS = Set.of("examples", "example", "title", "$comment");
+
+    //第二轮去掉的说明字段
+    private static final Set<String> DESCRIPTION_KEYWORDS = Set.of("description");
+
+    //值为 <名称,schema> 映射的关键字 其下一层的 key 是属性名而不是 schema 关键字
+    private static final Set<String> SCHEMA_MAP_KEYWORDS = Set.of("properties", "patternProperties", "$defs", "definitions");
+
+    //值为字面数据的关键字 不做处理
+    private static final Set<String> LITERAL_KEYWORDS = Set.of("enum", "const", "default");
+
+    private McpToolDefinitionUtils() {
+    }
+
+    /**
+     * 构建工具定义，工具名称与 Spring AI 默认实现一致（客户端名称前缀 + 工具名）。
+     *
+     * @param clientName     MCP 客户端名称
+     * @param tool           MCP 工具
+     * @param schemaMaxChars schema JSON 的长度上限，小于等于0表示不精简
+     * @return 工具定义
+     */
+    public static ToolDefinition buildToolDefinition(String clientName, McpSchema.Tool tool, int schemaMaxChars) {
+        String inputSchema = minifySchema(ModelOptionsUtils.toJsonString(tool.inputSchema()), schemaMaxChars);
+        return ToolDefinition.builder()
+                .name(McpToolUtils.prefixedToolName(clientName, tool.name()))
+                .description(tool.description())
+                .inputSchema(SCHEMA_INTERNER.intern(inputSchema))
+                .build();
+    }
+
+    /**
+     * 精简超出长度上限的 schema JSON。
+     *
+     * @param schemaJson     schema JSON
+     * @param schemaMaxChars 长度上限，小于等于0表示不精简
+     * @return 精简后的 schema JSON，未超出上限或解析失败时原样返回
+     */
+    public static String minifySchema(String schemaJson, int schemaMaxChars) {
+        if (schemaMaxChars <= 0 || schemaJson == null || schemaJson.length() <= schemaMaxChars) {
+            return schemaJson;
+        }
+        try {
+            JsonNode root = MAPPER.readTree(schemaJson);
+            stripKeywords(root, EXAMPLE_KEYWORDS);
+            String minified = MAPPER.writeValueAsString(root);
+            if (minified.length() > schemaMaxChars) {
+                stripKeywords(root, DESCRIPTION_KEYWORDS);
+                minified = MAPPER.writeValueAsString(root);
+            }
+            log.debug("【MCP TOOL DEFINITION】 schema 长度 {} 超过上限 {}, 精简后长度 {}", schemaJson.length(), schemaMaxChars, minified.length());
+            return minified;
+        } catch (Exception e) {
+            log.warn("【MCP TOOL DEFINITION】 schema 精简失败, 使用原始 schema", e);
+            return schemaJson;
+        }
+    }
+
+    private static void stripKeywords(JsonNode node, Set<String> keywords) {
+        if (node instanceof ObjectNode objectNode) {
+            objectNode.remove(keywords);
+            Iterator<Map.Entry<String, JsonNode>> fields = objectNode.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                if (LITERAL_KEYWORDS.contains(field.getKey())) {
+                    continue;
+                }
+                if (SCHEMA_MAP_KEYWORDS.contains(field.getKey()) && field.getValue().isObject()) {
+                    field.getValue().forEach(schema -> stripKeywords(schema, keywords));
+                } else {
+                    stripKeywords(field.getValue(), keywords);
+                }
+            }
+        } else if (node != null && node.isArray()) {
+            node.forEach(child -> stripKeywords(child, keywords));
+        }
+    }
+}
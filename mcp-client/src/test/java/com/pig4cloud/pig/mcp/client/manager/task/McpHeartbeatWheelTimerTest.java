@@ -0,0 +1,174 @@
+package com.pig4cloud.pig.mcp.client.manager.task;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 不启动工作线程，用手动时钟逐个刻度推进时间轮，验证槽位和剩余圈数的计算
+ * <p>
+ * 第 n 个刻度在时钟到达 {@code (n + 1) * TICK} 时处理，任务在其截止时间所在刻度处理时执行
+ */
+class McpHeartbeatWheelTimerTest {
+
+    private static final long TICK = 1000L;
+
+    private static final int WHEEL_SIZE = 8;
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private McpHeartbeatWheelTimer timer;
+
+    //已处理的刻度数
+    private long ticks;
+
+    //任务执行时所在的刻度
+    private final List<Long> fired = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        timer = new McpHeartbeatWheelTimer(null, TICK, WHEEL_SIZE, clock::get);
+    }
+
+    @Test
+    void delayWithinFirstRound() {
+        timer.newTimeout(this::record, 3 * TICK, TimeUnit.NANOSECONDS);
+        advance(3);
+        assertEquals(List.of(), fired);
+        advance(1);
+        assertEquals(List.of(3L), fired);
+    }
+
+    @Test
+    void delayEqualToOneTurn() {
+        // 与当前刻度落在同一槽位，本圈不能执行
+        timer.newTimeout(this::record, WHEEL_SIZE * TICK, TimeUnit.NANOSECONDS);
+        advance(WHEEL_SIZE);
+        assertEquals(List.of(), fired);
+        advance(1);
+        assertEquals(List.of((long) WHEEL_SIZE), fired);
+        advance(3 * WHEEL_SIZE);
+        assertEquals(List.of((long) WHEEL_SIZE), fired);
+    }
+
+    @Test
+    void delayLargerThanOneTurn() {
+        timer.newTimeout(this::record, (WHEEL_SIZE + 5) * TICK, TimeUnit.NANOSECONDS);
+        timer.newTimeout(this::record, (2 * WHEEL_SIZE + 3) * TICK, TimeUnit.NANOSECONDS);
+        timer.newTimeout(this::record, 3 * WHEEL_SIZE * TICK, TimeUnit.NANOSECONDS);
+        advance(4 * WHEEL_SIZE);
+        assertEquals(List.of(WHEEL_SIZE + 5L, 2 * WHEEL_SIZE + 3L, 3L * WHEEL_SIZE), fired);
+    }
+
+    @Test
+    void delayOfOneTurnRegisteredMidWheel() {
+        advance(5);
+        timer.newTimeout(this::record, WHEEL_SIZE * TICK, TimeUnit.NANOSECONDS);
+        advance(WHEEL_SIZE);
+        assertEquals(List.of(), fired);
+        advance(1);
+        assertEquals(List.of(5L + WHEEL_SIZE), fired);
+    }
+
+    @Test
+    void expiredDelayRunsOnNextTick() {
+        advance(2);
+        timer.newTimeout(this::record, 0, TimeUnit.NANOSECONDS);
+        timer.newTimeout(this::record, -TICK, TimeUnit.NANOSECONDS);
+        advance(1);
+        assertEquals(List.of(2L, 2L), fired);
+    }
+
+    @Test
+    void cancelBeforeTransfer() {
+        McpHeartbeatWheelTimer.WheelTimeout timeout = timer.newTimeout(this::record, 2 * TICK, TimeUnit.NANOSECONDS);
+        timeout.cancel();
+        assertTrue(timeout.isCancelled());
+        advance(2 * WHEEL_SIZE);
+        assertEquals(List.of(), fired);
+    }
+
+    @Test
+    void cancelAfterTransfer() {
+        McpHeartbeatWheelTimer.WheelTimeout cancelled = timer.newTimeout(this::record, (WHEEL_SIZE + 2) * TICK, TimeUnit.NANOSECONDS);
+        timer.newTimeout(this::record, (WHEEL_SIZE + 2) * TICK, TimeUnit.NANOSECONDS);
+        // 已进入槽位并经过一次剩余圈数递减
+        advance(WHEEL_SIZE);
+        cancelled.cancel();
+        advance(WHEEL_SIZE);
+        assertEquals(List.of(WHEEL_SIZE + 2L), fired);
+    }
+
+    @Test
+    void rescheduleFromCallback() {
+        // 回调在刻度 n 处理时执行，此时时钟为 (n + 1) * TICK，再延迟 WHEEL_SIZE - 1 个刻度正好回到同一槽位
+        timer.newTimeout(new Runnable() {
+            @Override
+            public void run() {
+                record();
+                if (fired.size() < 4) {
+                    timer.newTimeout(this, (WHEEL_SIZE - 1) * TICK, TimeUnit.NANOSECONDS);
+                }
+            }
+        }, 2 * TICK, TimeUnit.NANOSECONDS);
+        advance(5 * WHEEL_SIZE);
+        assertEquals(List.of(2L, 2L + WHEEL_SIZE, 2L + 2 * WHEEL_SIZE, 2L + 3 * WHEEL_SIZE), fired);
+    }
+
+    @Test
+    void rescheduleWithoutDelayFromCallbackRunsOnNextTick() {
+        timer.newTimeout(new Runnable() {
+            @Override
+            public void run() {
+                record();
+                if (fired.size() < 3) {
+                    timer.newTimeout(this, 0, TimeUnit.NANOSECONDS);
+                }
+            }
+        }, 0, TimeUnit.NANOSECONDS);
+        advance(WHEEL_SIZE);
+        assertEquals(List.of(0L, 1L, 2L), fired);
+    }
+
+    @Test
+    void failingTaskDoesNotStopOthers() {
+        timer.newTimeout(() -> {
+            throw new IllegalStateException("boom");
+        }, TICK, TimeUnit.NANOSECONDS);
+        timer.newTimeout(this::record, TICK, TimeUnit.NANOSECONDS);
+        advance(2);
+        assertEquals(List.of(1L), fired);
+    }
+
+    @Test
+    void stopDropsPendingTimeouts() {
+        timer.newTimeout(this::record, 2 * TICK, TimeUnit.NANOSECONDS);
+        advance(1);
+        timer.stop();
+        assertTrue(timer.newTimeout(this::record, 0, TimeUnit.NANOSECONDS).isCancelled());
+        advance(2 * WHEEL_SIZE);
+        assertEquals(List.of(), fired);
+    }
+
+    private void record() {
+        fired.add(ticks);
+    }
+
+    /**
+     * 推进若干刻度，每个刻度先把时钟拨到该刻度的处理时间
+     */
+    private void advance(int count) {
+        for (int i = 0; i < count; i++) {
+            clock.set((ticks + 1) * TICK);
+            timer.processTick();
+            ticks++;
+        }
+    }
+}
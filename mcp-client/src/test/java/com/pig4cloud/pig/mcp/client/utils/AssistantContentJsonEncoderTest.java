@@ -0,0 +1,84 @@
+package com.pig4cloud.pig.mcp.client.utils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**
+ * {@link AssistantContentJsonEncoder} 的输出应与 Jackson 默认配置序列化 {@code {"content":...}} 的结果逐字节一致
+ */
+class AssistantContentJsonEncoderTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void plainText() throws IOException {
+        assertSameAsJackson("");
+        assertSameAsJackson("hello world");
+        assertSameAsJackson("你好，世界");
+        assertSameAsJackson("é ß ©");
+    }
+
+    @Test
+    void quoteAndBackslash() throws IOException {
+        assertSameAsJackson("\"");
+        assertSameAsJackson("\\");
+        assertSameAsJackson("a \"quoted\" c:\\path\\to\\file \\\"");
+    }
+
+    @Test
+    void controlChars() throws IOException {
+        StringBuilder content = new StringBuilder();
+        for (char c = 0; c < 0x20; c++) {
+            content.append(c);
+        }
+        content.append('\u007F');
+        assertSameAsJackson(content.toString());
+        assertSameAsJackson("line1\nline2\r\n\ttab\bback\fform");
+    }
+
+    @Test
+    void validSurrogatePairs() throws IOException {
+        assertSameAsJackson("😀");
+        assertSameAsJackson("emoji 😀👍🏻 中文 𠀀");
+    }
+
+    @Test
+    void unpairedSurrogates() throws IOException {
+        assertSameAsJackson("\uD83D");
+        assertSameAsJackson("a\uDE00b");
+        assertSameAsJackson("\uD83Dx");
+        assertSameAsJackson("\uDE00\uD83D");
+        assertSameAsJackson("😀\uD83D");
+    }
+
+    @Test
+    void contentLargerThanBuffer() throws IOException {
+        assertSameAsJackson("a".repeat(20000));
+        assertSameAsJackson("中".repeat(10000));
+        assertSameAsJackson("😀".repeat(5000));
+        assertSameAsJackson("\u0001".repeat(5000));
+        assertSameAsJackson("ab\"\\\n中😀\u0001".repeat(2000));
+        // 让缓冲区边界落在各种多字节字符和后缀上
+        for (int prefix = 8170; prefix < 8200; prefix++) {
+            assertSameAsJackson("a".repeat(prefix) + "中😀\u0001\"");
+            assertSameAsJackson("a".repeat(prefix));
+        }
+    }
+
+    private void assertSameAsJackson(String content) throws IOException {
+        byte[] expected = objectMapper.writeValueAsBytes(Map.of("content", content));
+        assertArrayEquals(expected, encode(content));
+    }
+
+    private byte[] encode(String content) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AssistantContentJsonEncoder.write(content, out);
+        return out.toByteArray();
+    }
+}
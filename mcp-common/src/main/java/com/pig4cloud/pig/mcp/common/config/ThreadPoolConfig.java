@@ -5,7 +5,9 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import lombok.extern.slf4j.Slf4j;
@@ -26,22 +28,77 @@ public class ThreadPoolConfig {
     @Value("${sse.consumer.core.thread.pool:30}")
     private Integer sseConsumerCorePool; // SSE 消费者核心线程池大小
 
+    @Value("${sse.writer.core.thread.pool:30}")
+    private Integer sseWriterCorePool; // SSE 事件发送线程池大小
+
     @Value("${mcp.client.heartbeat.thread.pool:10}")
     private Integer mcpClientHeartbeatThreadPool; // MCP 客户端心跳检测线程池大小
 
+    @Value("${mcp.client.ping.thread.pool:20}")
+    private Integer mcpClientPingThreadPool; // MCP 同步客户端 ping 线程池大小
+
+    @Value("${mcp.stdio.warm.pool.thread.pool:4}")
+    private Integer mcpStdioWarmPoolThreadPool; // stdio 客户端预热线程池大小
+
+    @Value("${mcp.client.release.thread.pool:4}")
+    private Integer mcpClientReleaseThreadPool; // MCP 客户端释放线程池大小
+
     @Value("${mcp.client.init.thread.pool:10}")
     private Integer mcpClientInitThreadPool; // MCP 客户端初始化线程池大小
 
+    @Value("${mcp.tool.discovery.thread.pool:20}")
+    private Integer mcpToolDiscoveryThreadPool; // MCP 工具发现线程池大小
+
+    @Value("${mcp.tool.call.thread.pool:20}")
+    private Integer mcpToolCallThreadPool; // MCP 工具调用线程池大小
+
+    @Value("${thread.pool.virtual.enabled:false}")
+    private Boolean virtualEnabled; // 是否使用虚拟线程，需要 Java 21 及以上版本
+
+    @Value("${sse.consumer.virtual.max.concurrency:1000}")
+    private Integer sseConsumerVirtualMaxConcurrency; // 虚拟线程模式下 SSE 消费者最大并发数
+
+    @Value("${sse.writer.virtual.max.concurrency:1000}")
+    private Integer sseWriterVirtualMaxConcurrency; // 虚拟线程模式下 SSE 事件发送最大并发数
+
+    @Value("${mcp.client.heartbeat.virtual.max.concurrency:200}")
+    private Integer mcpClientHeartbeatVirtualMaxConcurrency; // 虚拟线程模式下 MCP 客户端心跳检测最大并发数
+
+    @Value("${mcp.client.ping.virtual.max.concurrency:200}")
+    private Integer mcpClientPingVirtualMaxConcurrency; // 虚拟线程模式下 MCP 同步客户端 ping 最大并发数
+
+    @Value("${mcp.stdio.warm.pool.virtual.max.concurrency:16}")
+    private Integer mcpStdioWarmPoolVirtualMaxConcurrency; // 虚拟线程模式下 stdio 客户端预热最大并发数
+
+    @Value("${mcp.client.release.virtual.max.concurrency:50}")
+    private Integer mcpClientReleaseVirtualMaxConcurrency; // 虚拟线程模式下 MCP 客户端释放最大并发数
+
+    @Value("${mcp.client.init.virtual.max.concurrency:200}")
+    private Integer mcpClientInitVirtualMaxConcurrency; // 虚拟线程模式下 MCP 客户端初始化最大并发数
+
+    @Value("${mcp.tool.discovery.virtual.max.concurrency:500}")
+    private Integer mcpToolDiscoveryVirtualMaxConcurrency; // 虚拟线程模式下 MCP 工具发现最大并发数
+
+    @Value("${mcp.tool.call.virtual.max.concurrency:500}")
+    private Integer mcpToolCallVirtualMaxConcurrency; // 虚拟线程模式下 MCP 工具调用最大并发数
+
+    @Value("${mcp.sse.http.client.virtual.max.concurrency:500}")
+    private Integer mcpSseHttpClientVirtualMaxConcurrency; // 虚拟线程模式下 MCP SSE 共享 HttpClient 回调最大并发数
+
 
     /**
      * sse stream consumer 消费线程池
      * 拒绝策略:负反馈机制
      *
-     * @return ThreadPoolExecutor
+     * @return ExecutorService
      */
     @Bean(name = "sseStreamConsumerThreadPool")
-    public ThreadPoolExecutor sseStreamConsumerThreadPool() {
+    public ExecutorService sseStreamConsumerThreadPool() {
         String poolNamePre = "sse-stream-consumer-thread-pool"; // 线程池名称前缀
+        ExecutorService virtualThreadPool = virtualThreadPool(poolNamePre, sseConsumerVirtualMaxConcurrency);
+        if (virtualThreadPool != null) {
+            return virtualThreadPool;
+        }
         return new ThreadPoolExecutor(
                 sseConsumerCorePool, sseConsumerCorePool, // 核心线程数和最大线程数都设置为 sseConsumerCorePool
                 365L, TimeUnit.DAYS, new LinkedBlockingQueue<>(1024), // 线程存活时间365天，阻塞队列大小为10
@@ -49,14 +106,38 @@ public class ThreadPoolConfig {
                 new ThreadPoolExecutor.CallerRunsPolicy()); // 拒绝策略，由调用线程执行
     }
 
+    /**
+     * sse 事件发送线程池，每个连接同一时刻最多占用一个线程顺序写出缓冲区中的事件
+     * 拒绝策略:直接拒绝，由 SseEventWriter 稍后重试。不能由调用线程执行，否则阻塞的写出会落到大模型流式输出的订阅线程上
+     *
+     * @return ExecutorService
+     */
+    @Bean(name = "sseEventWriterThreadPool")
+    public ExecutorService sseEventWriterThreadPool() {
+        String poolNamePre = "sse-event-writer-thread-pool"; // 线程池名称前缀
+        ExecutorService virtualThreadPool = virtualThreadPool(poolNamePre, sseWriterVirtualMaxConcurrency);
+        if (virtualThreadPool != null) {
+            return virtualThreadPool;
+        }
+        return new ThreadPoolExecutor(
+                sseWriterCorePool, sseWriterCorePool, // 核心线程数和最大线程数都设置为 sseWriterCorePool
+                365L, TimeUnit.DAYS, new LinkedBlockingQueue<>(1024),  // 线程存活时间365天，阻塞队列大小为1024
+                new ThreadFactoryBuilder().setNameFormat(poolNamePre + "-%d").setUncaughtExceptionHandler((t, e) -> log.error("SSE 事件发送线程异常,线程名称:{}", t.getName(), e)).build(), // 线程工厂，设置线程名称和异常处理器
+                new ThreadPoolExecutor.AbortPolicy()); // 队列满时拒绝，由 SseEventWriter 稍后重试
+    }
+
     /**
      * mcp client 心跳检测线程池
      *
-     * @return ThreadPoolExecutor
+     * @return ExecutorService
      */
     @Bean(name = "mcpClientHeartbeatThreadPool")
-    public ThreadPoolExecutor mcpClientHeartbeatThreadPool() {
+    public ExecutorService mcpClientHeartbeatThreadPool() {
         String poolNamePre = "mcp-client-heartbeat-thread-pool"; // 线程池名称前缀
+        ExecutorService virtualThreadPool = virtualThreadPool(poolNamePre, mcpClientHeartbeatVirtualMaxConcurrency);
+        if (virtualThreadPool != null) {
+            return virtualThreadPool;
+        }
         return new ThreadPoolExecutor(
                 mcpClientHeartbeatThreadPool, mcpClientHeartbeatThreadPool, // 核心线程数和最大线程数都设置为 mcpClientHeartbeatThreadPool
                 365L, TimeUnit.DAYS, new LinkedBlockingQueue<>(1024),  // 线程存活时间365天，阻塞队列大小为10
@@ -64,14 +145,83 @@ public class ThreadPoolConfig {
                 new ThreadPoolExecutor.CallerRunsPolicy());
     }
 
+    /**
+     * mcp client ping 线程池
+     * <p>
+     * 同步客户端的 ping 会阻塞线程直到超时，由心跳时间轮提交到该线程池执行。队列满时直接拒绝（视为一次失败的心跳），
+     * 不能使用 CallerRunsPolicy，否则阻塞的 ping 会在时间轮线程上执行并拖慢所有客户端的心跳。
+     *
+     * @return ExecutorService
+     */
+    @Bean(name = "mcpClientPingThreadPool")
+    public ExecutorService mcpClientPingThreadPool() {
+        String poolNamePre = "mcp-client-ping-thread-pool"; // 线程池名称前缀
+        ExecutorService virtualThreadPool = virtualThreadPool(poolNamePre, mcpClientPingVirtualMaxConcurrency);
+        if (virtualThreadPool != null) {
+            return virtualThreadPool;
+        }
+        return new ThreadPoolExecutor(
+                mcpClientPingThreadPool, mcpClientPingThreadPool, // 核心线程数和最大线程数都设置为 mcpClientPingThreadPool
+                365L, TimeUnit.DAYS, new LinkedBlockingQueue<>(256),  // 线程存活时间365天，阻塞队列大小为256
+                new ThreadFactoryBuilder().setNameFormat(poolNamePre + "-%d").setUncaughtExceptionHandler((t, e) -> log.error("MCP CLIENT ping 线程异常,线程名称:{}", t.getName(), e)).build(), // 线程工厂，设置线程名称和异常处理器
+                new ThreadPoolExecutor.AbortPolicy()); // 队列满时拒绝，由调用方视为 ping 失败
+    }
+
+    /**
+     * stdio 客户端预热线程池
+     * <p>
+     * 与 {@code mcpClientInitThreadPool} 隔离，预热不占用真实注册的初始化线程。队列满时拒绝，由预热池丢弃本次补充。
+     *
+     * @return ExecutorService
+     */
+    @Bean(name = "mcpStdioWarmPoolThreadPool")
+    public ExecutorService mcpStdioWarmPoolThreadPool() {
+        String poolNamePre = "mcp-stdio-warm-pool-thread-pool"; // 线程池名称前缀
+        ExecutorService virtualThreadPool = virtualThreadPool(poolNamePre, mcpStdioWarmPoolVirtualMaxConcurrency);
+        if (virtualThreadPool != null) {
+            return virtualThreadPool;
+        }
+        return new ThreadPoolExecutor(
+                mcpStdioWarmPoolThreadPool, mcpStdioWarmPoolThreadPool, // 核心线程数和最大线程数都设置为 mcpStdioWarmPoolThreadPool
+                365L, TimeUnit.DAYS, new LinkedBlockingQueue<>(64),  // 线程存活时间365天，阻塞队列大小为64
+                new ThreadFactoryBuilder().setNameFormat(poolNamePre + "-%d").setUncaughtExceptionHandler((t, e) -> log.error("stdio 客户端预热线程异常,线程名称:{}", t.getName(), e)).build(), // 线程工厂，设置线程名称和异常处理器
+                new ThreadPoolExecutor.AbortPolicy()); // 队列满时拒绝，由预热池丢弃本次补充
+    }
+
+    /**
+     * mcp client 释放线程池
+     * <p>
+     * 淘汰客户端时释放引用并关闭连接（stdio 子进程退出可能较慢），调用方是心跳时间轮或注册请求，任务不能在调用线程上执行，
+     * 也不能丢弃，否则子进程遗留。释放任务数量受客户端数量限制，因此使用不限长度的队列。
+     *
+     * @return ExecutorService
+     */
+    @Bean(name = "mcpClientReleaseThreadPool")
+    public ExecutorService mcpClientReleaseThreadPool() {
+        String poolNamePre = "mcp-client-release-thread-pool"; // 线程池名称前缀
+        ExecutorService virtualThreadPool = virtualThreadPool(poolNamePre, mcpClientReleaseVirtualMaxConcurrency, Integer.MAX_VALUE);
+        if (virtualThreadPool != null) {
+            return virtualThreadPool;
+        }
+        return new ThreadPoolExecutor(
+                mcpClientReleaseThreadPool, mcpClientReleaseThreadPool, // 核心线程数和最大线程数都设置为 mcpClientReleaseThreadPool
+                365L, TimeUnit.DAYS, new LinkedBlockingQueue<>(),  // 线程存活时间365天，阻塞队列不限长度
+                new ThreadFactoryBuilder().setNameFormat(poolNamePre + "-%d").setUncaughtExceptionHandler((t, e) -> log.error("MCP CLIENT 释放线程异常,线程名称:{}", t.getName(), e)).build(), // 线程工厂，设置线程名称和异常处理器
+                new ThreadPoolExecutor.AbortPolicy()); // 队列不限长度，只有线程池关闭后才会拒绝
+    }
+
     /**
      * mcp client 初始化链接线程池
      *
-     * @return ThreadPoolExecutor
+     * @return ExecutorService
      */
     @Bean(name = "mcpClientInitThreadPool")
-    public ThreadPoolExecutor mcpClientInitThreadPool() {
+    public ExecutorService mcpClientInitThreadPool() {
         String poolNamePre = "mcp-client-init-thread-pool"; // 线程池名称前缀
+        ExecutorService virtualThreadPool = virtualThreadPool(poolNamePre, mcpClientInitVirtualMaxConcurrency);
+        if (virtualThreadPool != null) {
+            return virtualThreadPool;
+        }
         return new ThreadPoolExecutor(
                 mcpClientInitThreadPool, mcpClientInitThreadPool, // 核心线程数和最大线程数都设置为 mcpClientHeartbeatThreadPool
                 365L, TimeUnit.DAYS, new LinkedBlockingQueue<>(1024),  // 线程存活时间365天，阻塞队列大小为10
@@ -79,5 +229,86 @@ public class ThreadPoolConfig {
                 new ThreadPoolExecutor.CallerRunsPolicy());
     }
 
+    /**
+     * mcp tool 工具发现线程池，用于并发获取多个 mcp client 的工具列表
+     * 拒绝策略:直接拒绝，由调用方降级为上次加载的工具或空列表，不能在请求线程上执行阻塞的 listTools
+     *
+     * @return ExecutorService
+     */
+    @Bean(name = "mcpToolDiscoveryThreadPool")
+    public ExecutorService mcpToolDiscoveryThreadPool() {
+        String poolNamePre = "mcp-tool-discovery-thread-pool"; // 线程池名称前缀
+        ExecutorService virtualThreadPool = virtualThreadPool(poolNamePre, mcpToolDiscoveryVirtualMaxConcurrency);
+        if (virtualThreadPool != null) {
+            return virtualThreadPool;
+        }
+        return new ThreadPoolExecutor(
+                mcpToolDiscoveryThreadPool, mcpToolDiscoveryThreadPool, // 核心线程数和最大线程数都设置为 mcpToolDiscoveryThreadPool
+                365L, TimeUnit.DAYS, new LinkedBlockingQueue<>(1024),  // 线程存活时间365天，阻塞队列大小为1024
+                new ThreadFactoryBuilder().setNameFormat(poolNamePre + "-%d").setUncaughtExceptionHandler((t, e) -> log.error("MCP TOOL 工具发现线程异常,线程名称:{}", t.getName(), e)).build(), // 线程工厂，设置线程名称和异常处理器
+                new ThreadPoolExecutor.AbortPolicy()); // 队列满时拒绝，由调用方降级
+    }
+
+    /**
+     * mcp tool 工具调用线程池，用于并发执行大模型同一轮返回的多个工具调用
+     *
+     * @return ExecutorService
+     */
+    @Bean(name = "mcpToolCallThreadPool")
+    public ExecutorService mcpToolCallThreadPool() {
+        String poolNamePre = "mcp-tool-call-thread-pool"; // 线程池名称前缀
+        ExecutorService virtualThreadPool = virtualThreadPool(poolNamePre, mcpToolCallVirtualMaxConcurrency);
+        if (virtualThreadPool != null) {
+            return virtualThreadPool;
+        }
+        return new ThreadPoolExecutor(
+                mcpToolCallThreadPool, mcpToolCallThreadPool, // 核心线程数和最大线程数都设置为 mcpToolCallThreadPool
+                365L, TimeUnit.DAYS, new LinkedBlockingQueue<>(1024),  // 线程存活时间365天，阻塞队列大小为1024
+                new ThreadFactoryBuilder().setNameFormat(poolNamePre + "-%d").setUncaughtExceptionHandler((t, e) -> log.error("MCP TOOL 工具调用线程异常,线程名称:{}", t.getName(), e)).build(), // 线程工厂，设置线程名称和异常处理器
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * mcp sse 共享 HttpClient 回调线程池，所有 SSE 传输对象的响应处理和异步请求在此执行
+     * <p>
+     * 与 JDK HttpClient 默认的执行器一样按需创建线程、空闲60秒回收，任务既不排队也不拒绝，
+     * 不能使用 CallerRunsPolicy，否则回调会在 HttpClient 唯一的选择器线程上执行，卡住所有 SSE 服务的读写。
+     *
+     * @return ExecutorService
+     */
+    @Bean(name = "mcpSseHttpClientThreadPool")
+    public ExecutorService mcpSseHttpClientThreadPool() {
+        String poolNamePre = "mcp-sse-http-client-thread-pool"; // 线程池名称前缀
+        ExecutorService virtualThreadPool = virtualThreadPool(poolNamePre, mcpSseHttpClientVirtualMaxConcurrency, Integer.MAX_VALUE);
+        if (virtualThreadPool != null) {
+            return virtualThreadPool;
+        }
+        return new ThreadPoolExecutor(
+                0, Integer.MAX_VALUE, // 按需创建线程，与 JDK HttpClient 默认执行器一致
+                60L, TimeUnit.SECONDS, new SynchronousQueue<>(),  // 空闲线程存活60秒，任务直接交给线程不排队
+                new ThreadFactoryBuilder().setNameFormat(poolNamePre + "-%d").setDaemon(true).setUncaughtExceptionHandler((t, e) -> log.error("MCP SSE HttpClient 回调线程异常,线程名称:{}", t.getName(), e)).build()); // 线程工厂，设置线程名称和异常处理器
+    }
+
+    /**
+     * 虚拟线程模式下创建基于虚拟线程的执行器
+     * 并发数由信号量控制，超出上限的任务进入积压队列（与平台线程池队列同为1024），队列满时拒绝，不会回退到调用线程执行
+     *
+     * @param poolNamePre    线程名称前缀
+     * @param maxConcurrency 最大并发数
+     * @return 未开启虚拟线程或当前 JDK 不支持时返回 null
+     */
+    private ExecutorService virtualThreadPool(String poolNamePre, Integer maxConcurrency) {
+        return virtualThreadPool(poolNamePre, maxConcurrency, 1024);
+    }
 
+    private ExecutorService virtualThreadPool(String poolNamePre, Integer maxConcurrency, int maxBacklog) {
+        if (!virtualEnabled) {
+            return null;
+        }
+        VirtualThreadExecutorService executorService = VirtualThreadExecutorService.create(poolNamePre, maxConcurrency, maxBacklog);
+        if (executorService != null) {
+            log.info("线程池 {} 使用虚拟线程, 最大并发数:{}", poolNamePre, maxConcurrency);
+        }
+        return executorService;
+    }
 }
@@ -0,0 +1,174 @@
+package com.pig4cloud.pig.mcp.common.config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 基于虚拟线程的执行器
+ * <p>
+ * 任务由 {@code Executors.newThreadPerTaskExecutor} 在虚拟线程上执行，关闭、等待结束等生命周期方法都委托给它，
+ * 优雅停机时会等待已提交的任务执行完毕。
+ * <p>
+ * 同时执行的任务数不超过 {@code maxConcurrency}：拿到许可的任务才会创建虚拟线程，
+ * 其余任务进入长度为 {@code maxBacklog} 的积压队列，由正在运行的虚拟线程执行完当前任务后依次取出执行；
+ * 积压队列满时抛出 {@link RejectedExecutionException}，不会回退到调用线程执行，积压也不会无限增长。
+ * <p>
+ * 虚拟线程需要运行在 Java 21 及以上版本，为了仍以 Java 17 编译，{@code Thread.ofVirtual} 和 {@code newThreadPerTaskExecutor} 通过反射获取，
+ * 运行环境不支持时由 {@link #create(String, int, int)} 返回 {@code null}，由调用方回退为平台线程池。
+ */
+@Slf4j
+public class VirtualThreadExecutorService extends AbstractExecutorService {
+
+    private final ExecutorService delegate;
+
+    private final String poolNamePre;
+
+    private final Semaphore permits;
+
+    private final int maxBacklog;
+
+    //等待许可的任务
+    private final ConcurrentLinkedQueue<Runnable> backlog = new ConcurrentLinkedQueue<>();
+
+    //积压队列中的任务数量
+    private final AtomicInteger backlogSize = new AtomicInteger();
+
+    private VirtualThreadExecutorService(ExecutorService delegate, String poolNamePre, int maxConcurrency, int maxBacklog) {
+        this.delegate = delegate;
+        this.poolNamePre = poolNamePre;
+        this.permits = new Semaphore(maxConcurrency);
+        this.maxBacklog = maxBacklog;
+    }
+
+    /**
+     * 创建基于虚拟线程的执行器
+     *
+     * @param poolNamePre    线程名称前缀
+     * @param maxConcurrency 最大并发任务数
+     * @param maxBacklog     积压队列长度
+     * @return 当前 JDK 不支持虚拟线程时返回 {@code null}
+     */
+    public static VirtualThreadExecutorService create(String poolNamePre, int maxConcurrency, int maxBacklog) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, poolNamePre + "-", 0L);
+            ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            ExecutorService delegate = (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, factory);
+            return new VirtualThreadExecutorService(delegate, poolNamePre, maxConcurrency, maxBacklog);
+        } catch (ReflectiveOperationException e) {
+            log.warn("当前JDK版本 {} 不支持虚拟线程, 线程池 {} 使用平台线程", System.getProperty("java.version"), poolNamePre);
+            return null;
+        }
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (delegate.isShutdown()) {
+            throw new RejectedExecutionException("线程池 " + poolNamePre + " 已关闭");
+        }
+        if (permits.tryAcquire()) {
+            startWorker(command);
+            return;
+        }
+        if (backlogSize.incrementAndGet() > maxBacklog) {
+            backlogSize.decrementAndGet();
+            throw new RejectedExecutionException("线程池 " + poolNamePre + " 积压任务超过 " + maxBacklog);
+        }
+        backlog.add(command);
+        // 入队前所有工作线程可能恰好已经退出，重新检查一次，避免任务滞留在队列中
+        if (permits.tryAcquire()) {
+            Runnable task = pollBacklog();
+            if (task == null) {
+                permits.release();
+            } else {
+                startWorker(task);
+            }
+        }
+    }
+
+    private void startWorker(Runnable firstTask) {
+        try {
+            delegate.execute(() -> runWorker(firstTask));
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * 执行任务后继续取出积压的任务，没有积压时归还许可并退出
+     */
+    private void runWorker(Runnable task) {
+        while (task != null) {
+            // 清除上一个任务被取消时留下的中断标记
+            Thread.interrupted();
+            try {
+                task.run();
+            } catch (Throwable e) {
+                log.error("虚拟线程任务执行异常,线程池:{},线程名称:{}", poolNamePre, Thread.currentThread().getName(), e);
+            }
+            task = pollBacklog();
+            if (task == null) {
+                permits.release();
+                // 归还许可后可能有新任务进入积压队列
+                if (backlog.isEmpty() || !permits.tryAcquire()) {
+                    return;
+                }
+                task = pollBacklog();
+                if (task == null) {
+                    permits.release();
+                }
+            }
+        }
+    }
+
+    private Runnable pollBacklog() {
+        Runnable task = backlog.poll();
+        if (task != null) {
+            backlogSize.decrementAndGet();
+        }
+        return task;
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> pending = new ArrayList<>();
+        Runnable task;
+        while ((task = pollBacklog()) != null) {
+            pending.add(task);
+        }
+        delegate.shutdownNow();
+        return pending;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+}
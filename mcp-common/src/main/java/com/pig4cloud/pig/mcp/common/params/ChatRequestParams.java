@@ -43,9 +43,11 @@ public class ChatRequestParams {
     private Boolean internalToolExecutionEnabled = false;
 
     //defaultFlag 是否内置 0 内置 1 自主添加
+    //toolCacheTtl 幂等工具的结果缓存有效期 <工具名,有效期(秒)> 未配置的工具不缓存
     public record McpConfig(String name, String desc, String type, Boolean defaultFlag, String url, String command,
                             List<String> args,
-                            Map<String, String> env) {
+                            Map<String, String> env,
+                            Map<String, Long> toolCacheTtl) {
     }
 
     ;
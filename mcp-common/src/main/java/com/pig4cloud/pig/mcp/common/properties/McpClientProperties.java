@@ -0,0 +1,114 @@
+package com.pig4cloud.pig.mcp.common.properties;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+@Component
+@EnableConfigurationProperties(McpClientProperties.class)
+@ConfigurationProperties(McpClientProperties.CONFIG_PREFIX)
+public class McpClientProperties {
+    public static final String CONFIG_PREFIX = "mcp.client";
+
+    //工具列表缓存有效期 单位秒 小于等于0表示不缓存
+    private Long toolsCacheTtl = 300L;
+
+    //单个客户端获取工具列表的超时时间 单位毫秒 超时的客户端本次请求不提供工具 小于等于0表示不超时
+    private Long toolsDiscoveryTimeout = 5000L;
+
+    //单个工具调用的超时时间 单位毫秒 超时后把超时信息作为工具结果返回给大模型
+    private Long toolCallTimeout = 30000L;
+
+    //流式问答最多执行的工具调用轮数 达到后发送终止事件并结束问答 防止大模型陷入工具调用循环 小于等于0表示不限制
+    private Integer toolMaxRounds = 10;
+
+    //流式问答的总耗时上限 单位毫秒 开始新一轮工具调用或再次提问前检查 超过后发送终止事件并结束问答 小于等于0表示不限制
+    private Long chatTimeBudget = 300000L;
+
+    //流式问答是否使用全链路非阻塞的异步客户端 开启后工具发现、工具调用和大模型流式输出均不占用线程池线程
+    private Boolean asyncEnabled = false;
+
+    //每个 SSE 连接发送缓冲区的高水位 单位事件数 客户端接收过慢导致积压超过该值后按 sseBackpressurePolicy 处理 小于等于0表示不限制
+    private Integer sseBufferHighWaterMark = 256;
+
+    //SSE 发送缓冲区超过高水位后的处理策略 coalesce:合并助手消息片段 drop:丢弃助手消息片段 cancel:取消大模型流式输出并结束连接
+    private String sseBackpressurePolicy = "coalesce";
+
+    //助手消息片段合并的最长累积时间 单位毫秒 在此时间内的片段合并为一个 SSE 事件发送 小于等于0表示逐片段发送
+    private Long sseCoalesceInterval = 50L;
+
+    //助手消息片段累积达到该字符数时立即发送 不再等待累积时间
+    private Integer sseCoalesceMaxChars = 1024;
+
+    //SSE 连接的空闲超时 单位毫秒 超过该时间没有新事件也没有成功写出时取消上游并回收连接 小于等于0表示不回收
+    private Long sseIdleTimeout = 120000L;
+
+    //每个 stdio 服务预热的客户端数量 小于等于0表示不预热
+    private Integer stdioWarmPoolSize = 0;
+
+    //最多预热的 stdio 服务数量 防止任意配置无限制地启动进程
+    private Integer stdioWarmPoolMaxServers = 16;
+
+    //stdio 服务连续多久没有注册需求后停止预热并关闭其预热客户端 单位毫秒 腾出名额给其他服务
+    private Long stdioWarmPoolIdleTimeout = 1800000L;
+
+    //幂等工具结果缓存的最大条目数 超出后按最近最少使用淘汰 小于等于0表示不缓存
+    private Long toolResultCacheMaxSize = 10000L;
+
+    //工具 schema JSON 的长度上限 超出后依次去掉示例、字段说明以压缩提示词 小于等于0表示不精简
+    private Integer toolSchemaMaxChars = 0;
+
+    //每次问答最多提供给大模型的工具数量 按用户最新问题与工具名称、描述的 BM25 相关度保留前K个 小于等于0表示提供全部工具
+    private Integer toolSelectionTopK = 0;
+
+    //SSE 类型 MCP 客户端是否优先使用 HTTP/2 开启后 HTTPS 服务通过协商复用连接 明文 HTTP 服务始终使用 HTTP/1.1
+    private Boolean sseHttp2Enabled = true;
+
+    //SSE 类型 MCP 客户端的连接超时时间 也是等待服务端下发消息地址的最长时间 单位毫秒
+    private Long sseConnectTimeout = 10000L;
+
+    //客户端心跳间隔 单位毫秒
+    private Long heartbeatInterval = 60000L;
+
+    //心跳间隔的随机抖动比例 每次心跳在 间隔*(1±比例) 内随机到期 避免大量客户端同时 ping
+    private Double heartbeatJitterRatio = 0.2D;
+
+    //空闲客户端心跳退避的最大间隔 单位毫秒 ping 连续成功时间隔逐次翻倍直到该值
+    private Long heartbeatMaxInterval = 600000L;
+
+    //心跳失败后的重试间隔 单位毫秒
+    private Long heartbeatFailureRetryInterval = 5000L;
+
+    //连续心跳失败多少次后移除客户端
+    private Integer heartbeatMaxFailures = 3;
+
+    //共享客户端的总权重上限 超出后按最近最少访问淘汰 小于等于0表示不限制
+    private Long registryMaxWeight = 200L;
+
+    //单个智能体最多持有的客户端数量 超出后淘汰该智能体最近最少访问的客户端 小于等于0表示不限制
+    private Integer registryMaxClientsPerAgent = 20;
+
+    //共享连接池超过总权重上限时 空闲时间不足该值的客户端视为正在使用 不会被淘汰 单位毫秒
+    private Long registryMinIdle = 60000L;
+
+    //stdio 客户端的权重 每个客户端对应一个子进程
+    private Long stdioClientWeight = 5L;
+
+    //sse 客户端的权重
+    private Long sseClientWeight = 1L;
+
+    //stdio 子进程资源采样间隔 单位毫秒
+    private Long stdioProcessSampleInterval = 10000L;
+
+    //宿主机内存使用率阈值 超过后按常驻内存从大到小淘汰空闲的 stdio 客户端 小于等于0表示不淘汰
+    private Double memoryPressureThreshold = 0.9D;
+
+    //内存压力淘汰时 stdio 客户端的最小空闲时间 单位毫秒 正在使用的客户端不会被淘汰
+    private Long memoryPressureMinIdle = 60000L;
+
+}